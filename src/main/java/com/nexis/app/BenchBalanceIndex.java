@@ -0,0 +1,64 @@
+package com.nexis.app;
+
+import com.nexis.core.Block;
+import com.nexis.core.Blockchain;
+import com.nexis.core.Transaction;
+import com.nexis.wallet.Wallet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures transaction admission throughput as the chain grows.
+ * With the ledger index, throughput should stay flat from 1k blocks upwards.
+ *
+ * Usage: BenchBalanceIndex [maxHeight] (default 100000, try 1000000 with a large heap)
+ */
+public class BenchBalanceIndex {
+
+    private static final int TX_PER_ROUND = 500;
+
+    public static void main(String[] args) {
+        int maxHeight = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+
+        System.out.println("--- BENCHMARK: BALANCE INDEX / ADMISSION THROUGHPUT ---");
+        Blockchain chain = new Blockchain(); // Nothing below is persisted
+        Wallet whale = new Wallet();
+        Wallet sink = new Wallet();
+
+        for (int height = 1_000; height <= maxHeight; height *= 10) {
+            growChain(chain, whale.getAddress(), height);
+
+            List<Transaction> batch = new ArrayList<>();
+            for (int i = 0; i < TX_PER_ROUND; i++) {
+                // Distinct values keep IDs unique when timestamps collide
+                batch.add(whale.sendFunds(sink.publicKey, 0.001 + i * 1e-6, 0.001));
+            }
+
+            long start = System.nanoTime();
+            for (Transaction tx : batch) {
+                chain.addTransaction(tx);
+            }
+            long elapsed = System.nanoTime() - start;
+            chain.mempool.clear();
+
+            double txPerSec = TX_PER_ROUND / (elapsed / 1_000_000_000.0);
+            System.out.println(String.format("Height %,10d | %8.1f tx/sec | %6.3f ms/tx",
+                    chain.chain.size(), txPerSec, elapsed / 1_000_000.0 / TX_PER_ROUND));
+        }
+
+        System.out.println("\n--- BENCHMARK COMPLETE ---");
+        System.exit(0);
+    }
+
+    // Appends unmined coinbase-only blocks straight onto the tip (benchmark only)
+    private static void growChain(Blockchain chain, String address, int targetHeight) {
+        while (chain.chain.size() < targetHeight) {
+            Transaction coinbase = new Transaction(null, address, Blockchain.BLOCK_REWARD, 0);
+            List<Transaction> txs = new ArrayList<>();
+            txs.add(coinbase);
+            Block block = new Block(chain.chain.size(), chain.getLatestBlock().hash, txs, 0, Blockchain.BLOCK_REWARD);
+            chain.appendBlock(block);
+        }
+    }
+}
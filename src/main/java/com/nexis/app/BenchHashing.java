@@ -0,0 +1,77 @@
+package com.nexis.app;
+
+import com.nexis.core.Block;
+import com.nexis.core.Transaction;
+import com.nexis.crypto.HashUtil;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the hashing paths used by mining and validation: time per hash and
+ * bytes allocated per hash on the calling thread.
+ *
+ * Usage: BenchHashing [iterations] (default 1000000)
+ */
+public class BenchHashing {
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int BLOCK_TX_COUNT = 100;
+
+    private static volatile long sink; // Keeps the JIT from dropping the hashing
+
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory
+            .getThreadMXBean();
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        System.out.println("--- BENCHMARK: HASHING ---");
+
+        String text = "NXS_BENCH_" + "a".repeat(118); // Typical transaction hash input length
+        Transaction tx = new Transaction(null, "NXS_BENCH_RECIPIENT", 12.5, 0.01);
+
+        List<Transaction> txs = new ArrayList<>();
+        for (int i = 0; i < BLOCK_TX_COUNT; i++) {
+            txs.add(new Transaction(null, "NXS_BENCH_RECIPIENT", i + 1, 0.01));
+        }
+        Block block = new Block(1, "0".repeat(64), txs, 1.0, 50.0);
+
+        run("applySha256(String)", iterations, i -> HashUtil.applySha256(text));
+        run("Transaction.calculateHash", iterations, i -> {
+            tx.timeStamp = i; // Defeat the memoized hash
+            return tx.calculateHash();
+        });
+        run("Block.calculateHash (" + BLOCK_TX_COUNT + " tx)", iterations / 10, i -> {
+            block.nonce = i;
+            return block.calculateHash();
+        });
+
+        System.out.println("\n--- BENCHMARK COMPLETE ---");
+    }
+
+    private interface HashCall {
+        String hash(int i);
+    }
+
+    private static void run(String name, int iterations, HashCall call) {
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            for (int i = 0; i < iterations; i++) {
+                sink += call.hash(i).charAt(0);
+            }
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += call.hash(i).charAt(0);
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = THREADS.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        System.out.println(String.format("%-32s | %8.1f ns/op | %7.1f B/op", name,
+                (double) elapsed / iterations, (double) allocated / iterations));
+    }
+}
@@ -0,0 +1,127 @@
+package com.nexis.app;
+
+import com.nexis.core.Block;
+import com.nexis.core.Blockchain;
+import com.nexis.core.Transaction;
+import com.nexis.storage.BlockStore;
+import com.nexis.wallet.Wallet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures what compressing sealed block segments saves on disk and what it
+ * costs per random block read. Blocks carry signed transfers between a set of
+ * wallets, so keys, addresses and hashes repeat as on a real chain.
+ *
+ * Usage: BenchSegmentCompression [blocks] [txPerBlock] (default 2000, 20)
+ */
+public class BenchSegmentCompression {
+
+    private static final long SEGMENT_BYTES = 1024 * 1024;
+    private static final int WALLETS = 50;
+    private static final int READS = 20_000;
+    private static final int WARMUP_ROUNDS = 3;
+
+    private static volatile long sink; // Keeps the JIT from dropping the reads
+
+    public static void main(String[] args) throws IOException {
+        int blocks = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int txPerBlock = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        System.out.println("--- BENCHMARK: SEGMENT COMPRESSION ---");
+        File dir = Files.createTempDirectory("nexis-bench-segments").toFile();
+        try {
+            BlockStore store = new BlockStore(dir.getPath(), SEGMENT_BYTES);
+            fill(store, blocks, txPerBlock);
+            int sealedBlocks = firstHeightOf(store, store.getPosition(store.getHeight()).segment);
+            System.out.println(String.format("Stored %,d blocks (%d tx each), %,d in sealed segments",
+                    blocks, txPerBlock, sealedBlocks));
+
+            long rawBytes = sealedBytes(store);
+            double rawMicros = readLatency(store, sealedBlocks);
+
+            long start = System.nanoTime();
+            int compressed = 0;
+            while (store.compressOldestSegment(0) >= 0) {
+                compressed++;
+            }
+            double compressMillis = (System.nanoTime() - start) / 1_000_000.0;
+            long compressedBytes = sealedBytes(store);
+            double compressedMicros = readLatency(store, sealedBlocks);
+            store.close();
+
+            System.out.println(String.format("Compressed %d segment(s) in %.1f ms (%.1f MB/s)", compressed,
+                    compressMillis, rawBytes / 1024.0 / 1024.0 / (compressMillis / 1000.0)));
+            System.out.println(String.format("Sealed segments | %,12d bytes raw | %,12d bytes compressed | %.2fx",
+                    rawBytes, compressedBytes, (double) rawBytes / compressedBytes));
+            System.out.println(String.format("Random read     | %8.2f us raw     | %8.2f us compressed     | +%.2f us",
+                    rawMicros, compressedMicros, compressedMicros - rawMicros));
+        } finally {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+
+        System.out.println("\n--- BENCHMARK COMPLETE ---");
+        System.exit(0);
+    }
+
+    private static void fill(BlockStore store, int blocks, int txPerBlock) {
+        List<Wallet> wallets = new ArrayList<>();
+        for (int i = 0; i < WALLETS; i++) {
+            wallets.add(new Wallet());
+        }
+        Random random = new Random(42);
+        String previousHash = "0";
+        for (int height = 0; height < blocks; height++) {
+            List<Transaction> txs = new ArrayList<>();
+            txs.add(new Transaction(null, wallets.get(height % WALLETS).getAddress(), Blockchain.BLOCK_REWARD, 0));
+            for (int i = 1; i < txPerBlock; i++) {
+                Wallet sender = wallets.get(random.nextInt(WALLETS));
+                Wallet recipient = wallets.get(random.nextInt(WALLETS));
+                txs.add(sender.sendFunds(recipient.publicKey, 1 + random.nextInt(1000) / 100.0, 0.01));
+            }
+            Block block = new Block(height, previousHash, txs, 0.01 * (txPerBlock - 1), Blockchain.BLOCK_REWARD);
+            store.append(block);
+            previousHash = block.hash;
+        }
+    }
+
+    // Lowest height stored in this segment
+    private static int firstHeightOf(BlockStore store, int segment) {
+        int height = store.getHeight();
+        while (height > 0 && store.getPosition(height - 1).segment == segment) {
+            height--;
+        }
+        return height;
+    }
+
+    private static long sealedBytes(BlockStore store) {
+        long bytes = 0;
+        int active = store.getPosition(store.getHeight()).segment;
+        for (int segment = 0; segment < active; segment++) {
+            bytes += store.getSegmentFile(segment).length();
+        }
+        return bytes;
+    }
+
+    // Average time to read a random sealed block as JSON (as served to peers)
+    private static double readLatency(BlockStore store, int sealedBlocks) {
+        Random random = new Random(7);
+        long elapsed = 0;
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < READS; i++) {
+                sink += store.readJson(random.nextInt(sealedBlocks)).length();
+            }
+            elapsed = System.nanoTime() - start;
+        }
+        return elapsed / 1000.0 / READS;
+    }
+}
@@ -39,7 +39,8 @@ public class TestPhase2 {
         // 4. Mine Block
         chain.mineMempool(miner.publicKey);
         
-        // 5. Verify Revenue Tracker
+        // 5. Verify Revenue Tracker (counted once the block's commit is logged)
+        chain.chainStore.flush();
         double trackedFees = chain.revenueTracker.totalFeesAllTime;
         double trackedRewards = chain.revenueTracker.totalRewardsAllTime;
         
@@ -0,0 +1,140 @@
+package com.nexis.consensus;
+
+import com.nexis.core.Block;
+import com.nexis.core.Blockchain;
+import com.nexis.core.NetworkConfig;
+
+import java.security.PublicKey;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Runs Proof-of-Work mining as a background job tied to the current tip.
+ *
+ * When the tip changes under a running job (e.g. a peer's block was accepted)
+ * the search is cancelled at once and a new template is built on the new tip.
+ * Templates only read the mempool, so transactions of the abandoned block are
+ * still pending and go into the next one; those confirmed by the peer block
+ * have already been removed.
+ */
+public class BackgroundMiner {
+
+    private final Blockchain blockchain;
+    private final Consumer<Block> onMined;
+    private final ExecutorService executor;
+
+    private final AtomicLong blocksMined = new AtomicLong();
+    private final AtomicLong staleBlocksAvoided = new AtomicLong();
+
+    // The search in progress, if any
+    private volatile Job current;
+
+    private static class Job {
+        final String tipHash;
+        final AtomicBoolean cancelled = new AtomicBoolean();
+
+        Job(String tipHash) {
+            this.tipHash = tipHash;
+        }
+    }
+
+    /**
+     * @param onMined Called with each block this miner appended (e.g. to
+     *                broadcast it)
+     */
+    public BackgroundMiner(Blockchain blockchain, Consumer<Block> onMined) {
+        this.blockchain = blockchain;
+        this.onMined = onMined;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "background-miner");
+            t.setDaemon(true);
+            return t;
+        });
+        blockchain.addTipListener(this::onTipChanged);
+    }
+
+    /**
+     * Queues a job that mines one block paying {@code rewardRecipient},
+     * restarting on the new tip as often as needed.
+     *
+     * @return The appended block, or null if mining is not allowed for the
+     *         recipient or was stopped
+     */
+    public Future<Block> submit(PublicKey rewardRecipient) {
+        return executor.submit(() -> mineOnTip(rewardRecipient));
+    }
+
+    /**
+     * Cancels the search in progress; it will restart on the current tip.
+     */
+    public void cancel() {
+        Job job = current;
+        if (job != null) {
+            job.cancelled.set(true);
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+        cancel();
+    }
+
+    public long getBlocksMined() {
+        return blocksMined.get();
+    }
+
+    public long getStaleBlocksAvoided() {
+        return staleBlocksAvoided.get();
+    }
+
+    public boolean isMining() {
+        return current != null;
+    }
+
+    private Block mineOnTip(PublicKey rewardRecipient) {
+        if (!blockchain.isMinerAllowed(rewardRecipient)) {
+            return null;
+        }
+
+        while (!Thread.currentThread().isInterrupted()) {
+            Block candidate = blockchain.createBlockTemplate(rewardRecipient);
+            Job job = new Job(candidate.previousHash);
+            current = job;
+            // The tip may have moved between building the template and publishing the job
+            if (!candidate.previousHash.equals(blockchain.getLatestBlock().hash)) {
+                job.cancelled.set(true);
+            }
+
+            boolean mined;
+            try {
+                mined = Miner.getInstance().mine(candidate, Blockchain.DIFFICULTY,
+                        NetworkConfig.getInstance().getMiningThreads(), job.cancelled);
+            } finally {
+                current = null;
+            }
+
+            if (mined && blockchain.appendMinedBlock(candidate)) {
+                blocksMined.incrementAndGet();
+                onMined.accept(candidate);
+                return candidate;
+            }
+
+            // Cancelled, or found just after another block took the tip: never published
+            staleBlocksAvoided.incrementAndGet();
+            System.out.println("Tip changed while mining block #" + candidate.index
+                    + ". Restarting on the new tip (stale blocks avoided: " + staleBlocksAvoided.get() + ")");
+        }
+        return null;
+    }
+
+    private void onTipChanged(Block tip) {
+        Job job = current;
+        if (job != null && !job.tipHash.equals(tip.hash)) {
+            job.cancelled.set(true);
+        }
+    }
+}
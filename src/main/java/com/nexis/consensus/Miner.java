@@ -0,0 +1,187 @@
+package com.nexis.consensus;
+
+import com.nexis.core.Block;
+import com.nexis.core.NetworkConfig;
+import com.nexis.crypto.HashBuffer;
+import com.nexis.crypto.HashUtil;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Multi-threaded Proof-of-Work search.
+ *
+ * The header fields before the nonce are hashed once per block and the digest
+ * state is cloned for every candidate (midstate reuse), so each attempt only
+ * hashes the nonce and the short suffix (binary headers encode the nonce as 4
+ * bytes, legacy blocks as decimal digits). Workers take interleaved nonces and the
+ * target is checked as leading zero bits on the raw digest.
+ *
+ * The lowest winning nonce is always chosen and workers stop once their next
+ * nonce is above the best found, so the result does not depend on the thread
+ * count (the genesis block hashes the same on every node).
+ *
+ * A search can be cancelled through a flag that workers poll between attempts.
+ */
+public class Miner {
+
+    private static final Miner INSTANCE = new Miner();
+
+    private volatile double lastHashrate; // hashes per second of the last search
+
+    public static Miner getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Mines with the thread count from NetworkConfig.
+     */
+    public void mine(Block block, int difficulty) {
+        mine(block, difficulty, NetworkConfig.getInstance().getMiningThreads());
+    }
+
+    /**
+     * Finds a nonce whose block hash starts with {@code difficulty} zero hex
+     * digits, starting from the block's current nonce, and sets the block's
+     * nonce and hash.
+     */
+    public void mine(Block block, int difficulty, int threads) {
+        mine(block, difficulty, threads, new AtomicBoolean());
+    }
+
+    /**
+     * Cancellable variant: returns as soon as {@code cancelled} is set.
+     *
+     * @return true if the block was mined, false if the search was cancelled
+     */
+    public boolean mine(Block block, int difficulty, int threads, AtomicBoolean cancelled) {
+        int workers = Math.max(1, threads);
+        int zeroBits = difficulty * 4;
+        boolean binaryNonce = block.hasBinaryHeader();
+        if (binaryNonce) {
+            block.difficultyBits = zeroBits; // Part of the hashed header
+        }
+        long start = System.nanoTime();
+        long totalHashes = 0;
+
+        while (true) {
+            byte[] prefix = block.writeHashPrefix(HashBuffer.get()).toByteArray();
+            byte[] suffix = block.writeHashSuffix(HashBuffer.get()).toByteArray();
+            long firstNonce = Math.max(0, block.nonce);
+            AtomicLong best = new AtomicLong(Long.MAX_VALUE);
+            AtomicLong hashes = new AtomicLong();
+
+            if (workers == 1) {
+                search(prefix, suffix, binaryNonce, zeroBits, firstNonce, 1, best, hashes, cancelled);
+            } else {
+                List<Thread> pool = new ArrayList<>(workers);
+                for (int t = 0; t < workers; t++) {
+                    long offset = firstNonce + t;
+                    Thread worker = new Thread(
+                            () -> search(prefix, suffix, binaryNonce, zeroBits, offset, workers, best, hashes,
+                                    cancelled),
+                            "pow-miner-" + t);
+                    worker.setDaemon(true);
+                    worker.start();
+                    pool.add(worker);
+                }
+                joinAll(pool);
+            }
+            totalHashes += hashes.get();
+
+            if (cancelled.get() && best.get() == Long.MAX_VALUE) {
+                System.out.println(String.format("Mining cancelled after %,d hashes", totalHashes));
+                return false;
+            }
+            if (best.get() != Long.MAX_VALUE) {
+                block.nonce = (int) best.get();
+                block.hash = block.calculateHash();
+                break;
+            }
+            // Nonce space exhausted: move the timestamp and search again
+            block.timestamp++;
+            block.nonce = 0;
+        }
+
+        double seconds = Math.max(1e-9, (System.nanoTime() - start) / 1_000_000_000.0);
+        lastHashrate = totalHashes / seconds;
+        System.out.println("Block Mined!!! : " + block.hash);
+        System.out.println(String.format("Mining: %,d hashes in %.0f ms (%.1f kH/s, %d threads)",
+                totalHashes, seconds * 1000, lastHashrate / 1000, workers));
+        return true;
+    }
+
+    /**
+     * @return Hashes per second achieved by the last search
+     */
+    public double getLastHashrate() {
+        return lastHashrate;
+    }
+
+    // Tries nonces offset, offset + stride, ... until a winner at or below them is known
+    private static void search(byte[] prefix, byte[] suffix, boolean binaryNonce, int zeroBits, long offset,
+            int stride,
+            AtomicLong best, AtomicLong hashes, AtomicBoolean cancelled) {
+        MessageDigest midstate = HashUtil.sha256Digest();
+        midstate.update(prefix);
+        byte[] digits = new byte[10];
+        byte[] out = new byte[HashUtil.SHA256_LENGTH];
+        long count = 0;
+
+        try {
+            for (long nonce = offset; nonce <= Integer.MAX_VALUE && nonce < best.get()
+                    && !cancelled.get(); nonce += stride) {
+                MessageDigest candidate = (MessageDigest) midstate.clone();
+                int len = binaryNonce ? writeBigEndian((int) nonce, digits) : writeDecimal((int) nonce, digits);
+                candidate.update(digits, digits.length - len, len);
+                candidate.update(suffix);
+                candidate.digest(out, 0, out.length);
+                count++;
+
+                if (ProofOfWork.hasLeadingZeroBits(out, zeroBits)) {
+                    best.accumulateAndGet(nonce, Math::min);
+                    break;
+                }
+            }
+        } catch (CloneNotSupportedException | DigestException e) {
+            throw new RuntimeException("Error hashing block candidate", e);
+        } finally {
+            hashes.addAndGet(count);
+        }
+    }
+
+    // Writes a non-negative int as decimal digits right-aligned in buf; returns the digit count
+    private static int writeDecimal(int value, byte[] buf) {
+        int pos = buf.length;
+        do {
+            buf[--pos] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        return buf.length - pos;
+    }
+
+    // Writes an int as 4 big-endian bytes right-aligned in buf; returns 4
+    private static int writeBigEndian(int value, byte[] buf) {
+        int pos = buf.length - 4;
+        buf[pos] = (byte) (value >>> 24);
+        buf[pos + 1] = (byte) (value >>> 16);
+        buf[pos + 2] = (byte) (value >>> 8);
+        buf[pos + 3] = (byte) value;
+        return 4;
+    }
+
+    private static void joinAll(List<Thread> threads) {
+        for (Thread t : threads) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while mining", e);
+            }
+        }
+    }
+}
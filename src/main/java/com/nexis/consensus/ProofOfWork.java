@@ -10,4 +10,19 @@ public class ProofOfWork {
         String target = new String(new char[difficulty]).replace('\0', '0');
         return hash.substring(0, difficulty).equals(target);
     }
+
+    /**
+     * Checks that a raw hash starts with at least {@code zeroBits} zero bits.
+     * Difficulty d in hex digits corresponds to 4 * d bits.
+     */
+    public static boolean hasLeadingZeroBits(byte[] hash, int zeroBits) {
+        int fullBytes = zeroBits >>> 3;
+        for (int i = 0; i < fullBytes; i++) {
+            if (hash[i] != 0) {
+                return false;
+            }
+        }
+        int remainingBits = zeroBits & 7;
+        return remainingBits == 0 || (hash[fullBytes] & 0xff) >>> (8 - remainingBits) == 0;
+    }
 }
@@ -1,11 +1,18 @@
 package com.nexis.core;
 
-import com.nexis.crypto.HashUtil;
+import com.nexis.consensus.Miner;
+import com.nexis.crypto.HashBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
 public class Block {
 
+    // Version 0: legacy string hash over all fields and transaction IDs.
+    // Version 1: hash of the fixed binary BlockHeader.
+    public static final int LEGACY_VERSION = 0;
+    public static final int BINARY_HEADER_VERSION = 1;
+
+    public int version; // Missing (0) in blocks stored before binary headers
     public int index;
     public long timestamp;
     public List<Transaction> transactions = new ArrayList<>();
@@ -16,6 +23,8 @@ public class Block {
     public byte[] validatorSignature; // Signature of the validator
     public double totalFees;
     public double blockReward;
+    public String merkleRoot; // Merkle root of the transaction IDs (version 1)
+    public int difficultyBits; // Required leading zero bits of the hash (version 1 PoW)
 
     public Block(int index, String previousHash, List<Transaction> transactions, double totalFees, double blockReward) {
         this.index = index;
@@ -23,6 +32,9 @@ public class Block {
         this.transactions = transactions;
         this.totalFees = totalFees;
         this.blockReward = blockReward;
+        this.version = BINARY_HEADER_VERSION;
+        this.merkleRoot = MerkleTree.computeRoot(transactions); // Once per template, not per nonce
+        this.difficultyBits = Blockchain.DIFFICULTY * 4;
         // Use a fixed timestamp for the genesis block to ensure deterministic hash
         // across nodes
         this.timestamp = (index == 0) ? 1737180000000L : System.currentTimeMillis();
@@ -30,27 +42,64 @@ public class Block {
     }
 
     public String calculateHash() {
-        StringBuilder transactionsData = new StringBuilder();
+        if (hasBinaryHeader()) {
+            return getHeader().calculateHash();
+        }
+        // Same bytes as the concatenated string of fields, without building it
+        HashBuffer buf = writeHashPrefix(HashBuffer.get()).putInt(nonce);
+        return writeHashSuffix(buf).sha256Hex();
+    }
+
+    public boolean hasBinaryHeader() {
+        return version >= BINARY_HEADER_VERSION;
+    }
+
+    public BlockHeader getHeader() {
+        return new BlockHeader(version, index, previousHash, merkleRoot, timestamp, difficultyBits, nonce,
+                totalFees, blockReward);
+    }
+
+    /**
+     * Writes the hashed fields that come before the nonce. They do not change
+     * while mining, so miners hash them once and reuse the digest state.
+     */
+    public HashBuffer writeHashPrefix(HashBuffer buf) {
+        if (hasBinaryHeader()) {
+            return getHeader().writePrefix(buf);
+        }
+        buf.putInt(index)
+                .putString(previousHash)
+                .putLong(timestamp);
         for (Transaction tx : transactions) {
-            transactionsData.append(tx.transactionId);
+            buf.putString(tx.transactionId);
         }
+        return buf;
+    }
 
-        return HashUtil.applySha256(
-                Integer.toString(index) +
-                        previousHash +
-                        Long.toString(timestamp) +
-                        transactionsData.toString() +
-                        Integer.toString(nonce) +
-                        Double.toString(totalFees) +
-                        Double.toString(blockReward));
+    /**
+     * Writes the hashed fields that come after the nonce.
+     */
+    public HashBuffer writeHashSuffix(HashBuffer buf) {
+        if (hasBinaryHeader()) {
+            return getHeader().writeSuffix(buf);
+        }
+        return buf.putDouble(totalFees)
+                .putDouble(blockReward);
     }
 
-    public void mineBlock(int difficulty) {
-        String target = new String(new char[difficulty]).replace('\0', '0');
-        while (!hash.substring(0, difficulty).equals(target)) {
-            nonce++;
-            hash = calculateHash();
+    /**
+     * @return Approximate serialized size: the header plus the serialized
+     *         transactions
+     */
+    public long getSerializedSize() {
+        long bytes = BlockHeader.SIZE;
+        for (Transaction tx : transactions) {
+            bytes += tx.getSerializedSize();
         }
-        System.out.println("Block Mined!!! : " + hash);
+        return bytes;
+    }
+
+    public void mineBlock(int difficulty) {
+        Miner.getInstance().mine(this, difficulty);
     }
 }
@@ -0,0 +1,101 @@
+package com.nexis.core;
+
+import com.nexis.crypto.HashBuffer;
+import com.nexis.crypto.HashUtil;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed-layout binary block header (version 1 blocks).
+ *
+ * Layout, big-endian, {@value #SIZE} bytes:
+ *
+ * <pre>
+ * version(4) height(4) previousHash(32) merkleRoot(32) timestamp(8)
+ * difficultyBits(4) nonce(4) totalFees(8) blockReward(8)
+ * </pre>
+ *
+ * The block hash is SHA-256 over these bytes only, so hashing costs the same
+ * for any number of transactions, and a header can be checked (hash and proof)
+ * without the block body. The transactions are committed through the Merkle
+ * root.
+ */
+public class BlockHeader {
+
+    public static final int SIZE = 104;
+
+    public int version;
+    public int height;
+    public String previousHash;
+    public String merkleRoot;
+    public long timestamp;
+    public int difficultyBits;
+    public int nonce;
+    public double totalFees;
+    public double blockReward;
+
+    public BlockHeader(int version, int height, String previousHash, String merkleRoot, long timestamp,
+            int difficultyBits, int nonce, double totalFees, double blockReward) {
+        this.version = version;
+        this.height = height;
+        this.previousHash = previousHash;
+        this.merkleRoot = merkleRoot;
+        this.timestamp = timestamp;
+        this.difficultyBits = difficultyBits;
+        this.nonce = nonce;
+        this.totalFees = totalFees;
+        this.blockReward = blockReward;
+    }
+
+    public String calculateHash() {
+        return writeSuffix(writePrefix(HashBuffer.get()).putRawInt(nonce)).sha256Hex();
+    }
+
+    /**
+     * Writes the fields before the nonce (fixed while mining).
+     */
+    public HashBuffer writePrefix(HashBuffer buf) {
+        return buf.putRawInt(version)
+                .putRawInt(height)
+                .putRawHash(previousHash)
+                .putRawHash(merkleRoot)
+                .putRawLong(timestamp)
+                .putRawInt(difficultyBits);
+    }
+
+    /**
+     * Writes the fields after the nonce.
+     */
+    public HashBuffer writeSuffix(HashBuffer buf) {
+        return buf.putRawDouble(totalFees)
+                .putRawDouble(blockReward);
+    }
+
+    public byte[] toBytes() {
+        return writeSuffix(writePrefix(HashBuffer.get()).putRawInt(nonce)).toByteArray();
+    }
+
+    public static BlockHeader fromBytes(byte[] bytes) {
+        if (bytes.length != SIZE) {
+            throw new RuntimeException("Invalid header size: " + bytes.length);
+        }
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        int version = in.getInt();
+        int height = in.getInt();
+        String previousHash = readHash(in);
+        String merkleRoot = readHash(in);
+        long timestamp = in.getLong();
+        int difficultyBits = in.getInt();
+        int nonce = in.getInt();
+        double totalFees = in.getDouble();
+        double blockReward = in.getDouble();
+        return new BlockHeader(version, height, previousHash, merkleRoot, timestamp, difficultyBits, nonce,
+                totalFees, blockReward);
+    }
+
+    private static String readHash(ByteBuffer in) {
+        byte[] hash = new byte[HashUtil.SHA256_LENGTH];
+        in.get(hash);
+        return HashUtil.bytesToHex(hash);
+    }
+}
@@ -0,0 +1,75 @@
+package com.nexis.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Mempool transactions selected for the next block.
+ *
+ * Selection walks the candidates in fee-rate order and takes every transaction
+ * that still fits the byte and count budget; anything left over stays in the
+ * mempool for a later block.
+ */
+public class BlockTemplate {
+
+    // Room kept free for the block header and the coinbase/treasury payouts
+    public static final int RESERVED_BYTES = 1024;
+    public static final int RESERVED_TRANSACTIONS = 2;
+
+    private final List<Transaction> transactions;
+    private final double totalFees;
+    private final int sizeBytes;
+
+    private BlockTemplate(List<Transaction> transactions, double totalFees, int sizeBytes) {
+        this.transactions = transactions;
+        this.totalFees = totalFees;
+        this.sizeBytes = sizeBytes;
+    }
+
+    /**
+     * Builds a template from candidates sorted highest fee rate first, using the
+     * block budget from NetworkConfig.
+     */
+    public static BlockTemplate select(List<Transaction> candidates) {
+        NetworkConfig config = NetworkConfig.getInstance();
+        return select(candidates, config.getMaxBlockBytes() - RESERVED_BYTES,
+                config.getMaxBlockTransactions() - RESERVED_TRANSACTIONS);
+    }
+
+    public static BlockTemplate select(List<Transaction> candidates, int maxBytes, int maxTransactions) {
+        List<Transaction> selected = new ArrayList<>();
+        double fees = 0;
+        int bytes = 0;
+
+        for (Transaction tx : candidates) {
+            if (selected.size() >= maxTransactions) {
+                break;
+            }
+            int size = tx.getSerializedSize();
+            if (bytes + size > maxBytes) {
+                continue; // A smaller, cheaper transaction may still fit
+            }
+            selected.add(tx);
+            fees += tx.fee;
+            bytes += size;
+        }
+        return new BlockTemplate(selected, fees, bytes);
+    }
+
+    public List<Transaction> getTransactions() {
+        return Collections.unmodifiableList(transactions);
+    }
+
+    public double getTotalFees() {
+        return totalFees;
+    }
+
+    public int getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public int size() {
+        return transactions.size();
+    }
+}
@@ -1,11 +1,19 @@
 package com.nexis.core;
 
+import com.nexis.consensus.ProofOfWork;
+import com.nexis.crypto.HashUtil;
 import com.nexis.crypto.KeyPairUtil;
+import com.nexis.crypto.SignatureVerifier;
 import java.security.PublicKey;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 public class Blockchain {
 
@@ -15,44 +23,352 @@ public class Blockchain {
     public static final String TREASURY_ADDRESS = "NXS_TREASURY_POOL_V1";
     public static final double TREASURY_PERCENTAGE = 0.10; // 10% to treasury
 
-    public List<Block> chain;
-    public List<Transaction> mempool;
+    public com.nexis.storage.BlockAccess chain;
+    public Mempool mempool;
     public Map<String, Double> stakes = new HashMap<>();
     public Map<String, Proposal> proposals = new HashMap<>();
     public Map<String, SmartContract> contracts = new HashMap<>();
     public com.nexis.storage.ChainStore chainStore;
     public RevenueTracker revenueTracker;
+    public LedgerState ledger = new LedgerState();
+    public com.nexis.storage.TransactionIndex txIndex;
+    public SignatureCache signatureCache = new SignatureCache();
+    private final List<Consumer<Block>> tipListeners = new CopyOnWriteArrayList<>();
 
     public Blockchain() {
         this.chainStore = new com.nexis.storage.ChainStore();
-        this.revenueTracker = new RevenueTracker();
-        this.mempool = new ArrayList<>();
-
-        // Try to load from disk
-        List<Block> loadedChain = chainStore.load();
-        if (loadedChain != null && !loadedChain.isEmpty()) {
+        this.revenueTracker = new RevenueTracker(chainStore.getWal());
+        this.txIndex = new com.nexis.storage.TransactionIndex();
+        this.mempool = new Mempool();
+
+        // Try to load from disk (only the most recent blocks are read into memory)
+        com.nexis.storage.BlockAccess loadedChain = chainStore.load();
+        boolean restored = false;
+        if (loadedChain != null && loadedChain.size() > 0) {
             this.chain = loadedChain;
-            // Validate loaded chain
-            if (!isChainValid()) {
+            restored = restoreSnapshot(chainStore.loadSnapshot());
+            // Without a usable snapshot, validate the whole loaded chain
+            if (!restored && chain.getFirstFullHeight() > 0) {
+                System.err.println("Pruned chain cannot be replayed without its state snapshot. Starting fresh.");
+                this.chain = chainStore.reset();
+                createGenesisBlock();
+            } else if (!restored && !isChainValid()) {
                 System.err.println("Loaded chain is invalid! Starting fresh.");
-                this.chain = new ArrayList<>();
+                this.chain = chainStore.reset();
                 createGenesisBlock();
             }
         } else {
-            this.chain = new ArrayList<>();
+            this.chain = chainStore.reset();
             createGenesisBlock();
         }
+        if (!restored) {
+            rebuildLedger();
+        }
+        txIndex.load(chain.asList(), chain.getFirstFullHeight());
+        chainStore.addPruneListener(txIndex::prune);
+    }
+
+    /**
+     * Restores a state snapshot and replays (and validates) only the blocks
+     * after it. Stakes, proposals and contracts are not derived from blocks,
+     * so they are taken from the snapshot even if it cannot be used otherwise.
+     *
+     * @return false if the snapshot is missing, not on the loaded chain or the
+     *         blocks after it are invalid
+     */
+    private boolean restoreSnapshot(com.nexis.storage.StateSnapshot snapshot) {
+        if (snapshot == null) {
+            return false;
+        }
+        stakes.clear();
+        stakes.putAll(snapshot.stakes);
+        proposals.clear();
+        proposals.putAll(snapshot.proposals);
+        contracts.clear();
+        contracts.putAll(snapshot.contracts);
+
+        if (snapshot.height >= chain.size() || snapshot.height < chain.getFirstFullHeight()
+                || chain.findHeight(snapshot.tipHash) != snapshot.height) {
+            System.out.println("State snapshot at height " + snapshot.height
+                    + " is not on the loaded chain. Replaying the whole chain.");
+            return false;
+        }
+        List<Block> after = chain.asList().subList(snapshot.height, chain.size());
+        if (!new ChainValidator(this).validate(after)) {
+            return false;
+        }
+
+        ledger.restore(snapshot.balances, snapshot.issuedSupply, snapshot.totalFees);
+        for (Block block : after.subList(1, after.size())) {
+            ledger.applyBlock(block);
+        }
+        System.out.println("Restored state snapshot at height " + snapshot.height + ", replayed "
+                + (after.size() - 1) + " block(s)");
+        return true;
+    }
+
+    /**
+     * State at the current tip for a snapshot. Stakes, proposals and contracts
+     * are copied under the chain lock their writers take, so the snapshot can
+     * be encoded after it is released.
+     */
+    public synchronized com.nexis.storage.StateSnapshot createSnapshot() {
+        com.nexis.storage.StateSnapshot snapshot = new com.nexis.storage.StateSnapshot();
+        Block tip = getLatestBlock();
+        snapshot.height = tip.index;
+        snapshot.tipHash = tip.hash;
+        snapshot.issuedSupply = ledger.getIssuedSupply();
+        snapshot.totalFees = ledger.getTotalFees();
+        snapshot.balances = ledger.getBalances();
+        snapshot.stakes = new HashMap<>(stakes);
+        snapshot.proposals = new HashMap<>();
+        for (Proposal p : proposals.values()) {
+            Proposal copy = new Proposal(p.id, p.description, p.proposer, 0);
+            copy.endTimestamp = p.endTimestamp;
+            copy.votes = new HashMap<>(p.votes);
+            copy.executed = p.executed;
+            snapshot.proposals.put(p.id, copy);
+        }
+        snapshot.contracts = new HashMap<>();
+        for (SmartContract c : contracts.values()) {
+            SmartContract copy = new SmartContract(c.address, c.owner, c.script);
+            copy.state = c.state;
+            snapshot.contracts.put(c.address, copy);
+        }
+        return snapshot;
+    }
+
+    // Replays the whole chain into the ledger (startup only)
+    private void rebuildLedger() {
+        ledger.clear();
+        for (Block block : chain) {
+            ledger.applyBlock(block);
+        }
+
+        com.nexis.storage.ChainStore.ChainSummary summary = chainStore.loadSummary();
+        if (summary != null && summary.tipHash != null && summary.tipHash.equals(getLatestBlock().hash)
+                && Math.abs(summary.issuedSupply - ledger.getIssuedSupply()) > 1e-6) {
+            System.err.println("Persisted supply counters disagree with the chain. Using recomputed values.");
+        }
     }
 
     private void createGenesisBlock() {
         // Genesis block has no transactions and previous hash is "0"
         Block genesis = new Block(0, "0", new ArrayList<>(), 0, BLOCK_REWARD);
         genesis.mineBlock(DIFFICULTY); // Mine genesis block too
-        chain.add(genesis);
+        chain.append(genesis);
+    }
+
+    /**
+     * Appends an already validated block to the tip, applies it to the ledger and
+     * drops its transactions from the mempool.
+     */
+    public synchronized void appendBlock(Block block) {
+        chain.append(block);
+        ledger.applyBlock(block);
+        txIndex.indexBlock(block);
+        mempool.removeAll(block.transactions);
+        notifyTipChanged();
+    }
+
+    /**
+     * Appends a validated block only if it still extends the current tip. The
+     * check and the append are atomic with respect to other chain updates.
+     *
+     * @return false if the tip moved on and the block is stale
+     */
+    public synchronized boolean tryAppendBlock(Block block) {
+        if (!block.previousHash.equals(getLatestBlock().hash)) {
+            return false;
+        }
+        appendBlock(block);
+        return true;
+    }
+
+    /**
+     * Registers a callback run with the new tip whenever a block is appended or
+     * the chain is replaced (e.g. to cancel mining on an outdated tip).
+     */
+    public void addTipListener(Consumer<Block> listener) {
+        tipListeners.add(listener);
+    }
+
+    private void notifyTipChanged() {
+        Block tip = getLatestBlock();
+        for (Consumer<Block> listener : tipListeners) {
+            listener.accept(tip);
+        }
+    }
+
+    /**
+     * Switches to a competing chain sharing our genesis (e.g. a full chain sent
+     * by a peer). Only the blocks after the common ancestor are validated and
+     * applied; see {@link #reorganize(int, List)}.
+     *
+     * @return true if the chain was switched
+     */
+    public boolean replaceChain(List<Block> newChain) {
+        int forkHeight = findCommonAncestor(newChain);
+        if (forkHeight < 0) {
+            System.err.println("Received chain has different genesis block. Rejecting.");
+            return false;
+        }
+        return reorganize(forkHeight, newChain.subList(forkHeight + 1, newChain.size()));
+    }
+
+    /**
+     * @return Height of the last block of {@code otherChain} that is also on our
+     *         main chain at the same height, or -1 if the genesis differs. Walks
+     *         back from the shorter tip, so the cost is the length of the
+     *         divergent part.
+     */
+    public int findCommonAncestor(List<Block> otherChain) {
+        for (int height = Math.min(chain.size(), otherChain.size()) - 1; height >= 0; height--) {
+            if (getHeight(otherChain.get(height).hash) == height) {
+                return height;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Replaces the blocks above {@code forkHeight} with {@code branch}, which
+     * must start on the block at that height and end above our tip. On a
+     * pruned node the fork point must be a block that is still kept.
+     *
+     * Only the branch is validated. The ledger and transaction index are rolled
+     * back block by block down to the fork point and the branch is applied on
+     * top, so the cost is proportional to the depth of the reorganization, not
+     * to the chain height. Transactions of the abandoned blocks that the branch
+     * does not contain go back to the mempool if they are still valid.
+     *
+     * @return true if the chain was switched
+     */
+    public boolean reorganize(int forkHeight, List<Block> branch) {
+        if (branch.isEmpty() || forkHeight < 0 || forkHeight >= chain.size()) {
+            return false;
+        }
+        if (forkHeight < chain.getFirstFullHeight()) {
+            System.err.println("Competing branch forks at height " + forkHeight
+                    + ", below the pruned history. Rejecting.");
+            return false;
+        }
+
+        // Validate outside the lock; the fork block is checked again below
+        Block parent = chain.get(forkHeight);
+        for (Block block : branch) {
+            if (!isValidBlock(block, parent)) {
+                System.err.println("Competing branch is invalid at block " + block.index + ". Rejecting.");
+                return false;
+            }
+            parent = block;
+        }
+
+        List<Transaction> orphaned = new ArrayList<>();
+        synchronized (this) {
+            int tipHeight = chain.size() - 1;
+            if (forkHeight > tipHeight || !chain.getHash(forkHeight).equals(branch.get(0).previousHash)) {
+                System.out.println("Chain changed while validating the competing branch. Rejecting.");
+                return false;
+            }
+            if (forkHeight + branch.size() <= tipHeight) {
+                System.out.println("Competing branch is not longer than the main chain. Ignoring.");
+                return false;
+            }
+
+            // Undo the abandoned blocks from the tip down to the fork point
+            for (int height = tipHeight; height > forkHeight; height--) {
+                Block block = chain.removeLast();
+                ledger.revertBlock(block);
+                txIndex.unindexBlock(block);
+                for (Transaction tx : block.transactions) {
+                    if (tx.sender != null) {
+                        orphaned.add(tx);
+                    }
+                }
+            }
+
+            for (Block block : branch) {
+                chain.append(block);
+                ledger.applyBlock(block);
+                txIndex.indexBlock(block);
+                mempool.removeAll(block.transactions);
+            }
+
+            // Signatures were verified when the abandoned blocks were accepted
+            int restored = 0;
+            for (Transaction tx : orphaned) {
+                if (txIndex.contains(tx.transactionId)) {
+                    continue; // Also confirmed on the new branch
+                }
+                try {
+                    admitVerifiedTransaction(tx);
+                    restored++;
+                } catch (RuntimeException e) {
+                    System.out.println("Dropped transaction " + tx.transactionId + " after reorganization ("
+                            + e.getMessage() + ")");
+                }
+            }
+
+            System.out.println("Reorganized at height " + forkHeight + ": " + (tipHeight - forkHeight)
+                    + " block(s) undone, " + branch.size() + " applied, " + restored
+                    + " transaction(s) returned to the mempool");
+            chainStore.save(this);
+        }
+        notifyTipChanged();
+        return true;
+    }
+
+    /**
+     * @return Height of the block with this hash on the main chain, or -1
+     */
+    public int getHeight(String hash) {
+        return chain.findHeight(hash);
+    }
+
+    /**
+     * Block locator for sync requests: hashes from the tip backwards, dense for
+     * the last 10 blocks and then with doubling gaps, always ending at genesis.
+     * Lets a peer find our fork point in O(log n) hashes.
+     */
+    public synchronized List<String> getBlockLocator() {
+        List<String> locator = new ArrayList<>();
+        int step = 1;
+        for (int height = chain.size() - 1; height > 0; height -= step) {
+            locator.add(chain.getHash(height));
+            if (locator.size() >= 10) {
+                step *= 2;
+            }
+        }
+        locator.add(chain.getHash(0));
+        return locator;
+    }
+
+    /**
+     * @return Height of the first locator hash found on our main chain, or -1
+     *         if none is (different genesis)
+     */
+    public int findForkPoint(List<String> locator) {
+        for (String hash : locator) {
+            int height = getHeight(hash);
+            if (height >= 0) {
+                return height;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * JSON of the main-chain block at this height, as sent to peers and API
+     * clients. Saved blocks are served straight from the block store's mapped
+     * segments without decoding them; only blocks not yet saved are serialized.
+     */
+    public String getBlockJson(int height) {
+        return chain.getJson(height);
     }
 
     public Block getLatestBlock() {
-        return chain.get(chain.size() - 1);
+        return chain.getLatest();
     }
 
     public Block getLastBlock() {
@@ -62,22 +378,25 @@ public class Blockchain {
     public void addBlock(Block newBlock) {
         newBlock.previousHash = getLatestBlock().hash;
         newBlock.mineBlock(DIFFICULTY);
-        chain.add(newBlock);
+        appendBlock(newBlock);
         chainStore.save(this);
     }
 
+    /**
+     * Validates the chain, or on a pruned node the blocks that are kept.
+     */
     public boolean isChainValid() {
-        for (int i = 1; i < chain.size(); i++) {
-            if (!isValidBlock(chain.get(i), chain.get(i - 1))) {
-                return false;
-            }
-        }
-        return true;
+        return new ChainValidator(this).validate(chain.asList().subList(chain.getFirstFullHeight(), chain.size()));
     }
 
     public boolean isValidBlock(Block currentBlock, Block previousBlock) {
-        String target = new String(new char[DIFFICULTY]).replace('\0', '0');
+        return isValidLink(currentBlock, previousBlock) && isValidBlockContent(currentBlock);
+    }
 
+    /**
+     * Cheap checks tying a block to its predecessor (index and previous hash).
+     */
+    public boolean isValidLink(Block currentBlock, Block previousBlock) {
         // 1. Check if index is correct
         if (currentBlock.index != previousBlock.index + 1) {
             System.out.println("Block " + currentBlock.index + " has invalid index");
@@ -89,6 +408,74 @@ public class Blockchain {
             System.out.println("Block " + currentBlock.index + " has invalid previous hash");
             return false;
         }
+        return true;
+    }
+
+    /**
+     * Checks that depend on the block alone (hash, proof, Merkle root, budget,
+     * transaction hashes and signatures), so blocks can be checked independently
+     * in parallel.
+     */
+    public boolean isValidBlockContent(Block currentBlock) {
+        if (!isValidBlockHeader(currentBlock) || !isValidBlockBody(currentBlock)) {
+            return false;
+        }
+
+        // 7. Check transaction hashes, then verify all signatures as one batch
+        for (Transaction tx : currentBlock.transactions) {
+            if (!tx.transactionId.equals(tx.calculateHash())) {
+                System.out.println("Transaction " + tx.transactionId + " is invalid/tampered");
+                return false;
+            }
+        }
+        List<Transaction> invalid = verifySignatures(currentBlock.transactions);
+        for (Transaction tx : invalid) {
+            System.out.println("Transaction " + tx.transactionId + " has invalid signature");
+        }
+        return invalid.isEmpty();
+    }
+
+    /**
+     * Verifies the signatures of many transactions in parallel on the shared
+     * SignatureVerifier pool. Coinbase transactions carry no signature and pass;
+     * signatures already in the signature cache are not checked again.
+     *
+     * @return The transactions whose signature is missing or invalid
+     */
+    public List<Transaction> verifySignatures(List<Transaction> transactions) {
+        List<SignatureVerifier.Job> jobs = new ArrayList<>(transactions.size());
+        Map<String, Transaction> byJobId = new HashMap<>();
+        for (int i = 0; i < transactions.size(); i++) {
+            Transaction tx = transactions.get(i);
+            if (tx.sender == null || signatureCache.contains(tx)) {
+                continue;
+            }
+            String jobId = Integer.toString(i);
+            jobs.add(new SignatureVerifier.Job(jobId, tx.sender, tx.getSignatureData().getBytes(), tx.signature));
+            byJobId.put(jobId, tx);
+        }
+
+        if (jobs.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        List<Transaction> invalid = new ArrayList<>();
+        for (SignatureVerifier.Job failed : SignatureVerifier.getInstance().verifyBatch(jobs)) {
+            invalid.add(byJobId.remove(failed.id));
+        }
+        for (Transaction verified : byJobId.values()) {
+            signatureCache.add(verified);
+        }
+        return invalid;
+    }
+
+    /**
+     * Block hash and proof (PoW target or PoS validator signature). For binary
+     * headers the hash does not depend on the transactions, so a PoW header can
+     * be checked before its body is available.
+     */
+    public boolean isValidBlockHeader(Block currentBlock) {
+        String target = new String(new char[DIFFICULTY]).replace('\0', '0');
 
         // 3. Check if hash is valid
         if (!currentBlock.hash.equals(currentBlock.calculateHash())) {
@@ -110,26 +497,87 @@ public class Blockchain {
                     // logic changes
                 }
             }
+        } else if (currentBlock.hasBinaryHeader()) {
+            // Proof of Work on the raw hash; the header commits to the difficulty
+            if (currentBlock.difficultyBits != DIFFICULTY * 4 || !ProofOfWork.hasLeadingZeroBits(
+                    HashUtil.hexToBytes(currentBlock.hash), currentBlock.difficultyBits)) {
+                System.out.println("Block " + currentBlock.index + " has not been mined (PoW)");
+                return false;
+            }
         } else {
-            // Proof of Work
+            // Proof of Work (legacy blocks)
             if (!currentBlock.hash.substring(0, DIFFICULTY).equals(target)) {
                 System.out.println("Block " + currentBlock.index + " has not been mined (PoW)");
                 return false;
             }
         }
+        return true;
+    }
 
-        // 5. Check if transactions are valid
-        for (Transaction tx : currentBlock.transactions) {
-            if (!tx.transactionId.equals(tx.calculateHash())) {
-                System.out.println("Transaction " + tx.transactionId + " is invalid/tampered");
-                return false;
-            }
-            if (!tx.verifySignature()) {
-                System.out.println("Transaction " + tx.transactionId + " has invalid signature");
+    /**
+     * Ties the body to the header (Merkle root) and enforces the block budget.
+     */
+    public boolean isValidBlockBody(Block currentBlock) {
+        // 5. Check the Merkle root commits to exactly these transactions. A
+        // repeated transaction could be appended without changing the root.
+        if (MerkleTree.hasDuplicateIds(currentBlock.transactions)) {
+            System.out.println("Block " + currentBlock.index + " contains a transaction twice");
+            return false;
+        }
+        if (currentBlock.hasBinaryHeader()) {
+            try {
+                if (!MerkleTree.computeRoot(currentBlock.transactions).equals(currentBlock.merkleRoot)) {
+                    System.out.println("Block " + currentBlock.index + " has invalid Merkle root");
+                    return false;
+                }
+            } catch (RuntimeException e) {
+                System.out.println("Block " + currentBlock.index + " has malformed transactions");
                 return false;
             }
         }
 
+        // 6. Check block budget (NetworkConfig)
+        NetworkConfig config = NetworkConfig.getInstance();
+        if (currentBlock.transactions.size() > config.getMaxBlockTransactions()) {
+            System.out.println("Block " + currentBlock.index + " exceeds the transaction count limit");
+            return false;
+        }
+        int blockBytes = 0;
+        for (Transaction tx : currentBlock.transactions) {
+            blockBytes += tx.getSerializedSize();
+        }
+        if (blockBytes > config.getMaxBlockBytes()) {
+            System.out.println("Block " + currentBlock.index + " exceeds the block size limit");
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks a transaction's ID against its contents and verifies its signature.
+     */
+    public boolean isValidTransaction(Transaction tx) {
+        if (!tx.transactionId.equals(tx.calculateHash())) {
+            System.out.println("Transaction " + tx.transactionId + " is invalid/tampered");
+            return false;
+        }
+        if (!isSignatureValid(tx)) {
+            System.out.println("Transaction " + tx.transactionId + " has invalid signature");
+            return false;
+        }
+        return true;
+    }
+
+    // Verifies a single signature unless it is already in the signature cache
+    private boolean isSignatureValid(Transaction tx) {
+        if (tx.sender == null || signatureCache.contains(tx)) {
+            return true;
+        }
+        if (!tx.verifySignature()) {
+            return false;
+        }
+        signatureCache.add(tx);
         return true;
     }
 
@@ -142,33 +590,12 @@ public class Blockchain {
     }
 
     public double getCurrentSupply() {
-        double supply = 0;
-        for (Block block : chain) {
-            for (Transaction tx : block.transactions) {
-                // Coinbase/Treasury transactions have no sender (null)
-                if (tx.sender == null) {
-                    supply += tx.value;
-                }
-            }
-        }
-        return supply;
+        return ledger.getIssuedSupply();
     }
 
     public double getBalance(String address) {
-        double balance = 0;
-
-        // Iterate over the blockchain
-        for (Block block : chain) {
-            for (Transaction tx : block.transactions) {
-                // Use stored address strings
-                if (address.equals(tx.recipientAddress)) {
-                    balance += tx.value;
-                }
-                if (address.equals(tx.senderAddress)) {
-                    balance -= (tx.value + tx.fee);
-                }
-            }
-        }
+        // Confirmed balance from the incrementally maintained ledger
+        double balance = ledger.getBalance(address);
 
         // Subtract staked amount
         balance -= stakes.getOrDefault(address, 0.0);
@@ -178,9 +605,45 @@ public class Blockchain {
 
     public void addTransaction(Transaction tx) {
         // 1. Verify Signature
-        if (!tx.verifySignature()) {
+        if (!isSignatureValid(tx)) {
             throw new RuntimeException("Invalid Transaction Signature");
         }
+        admitVerifiedTransaction(tx);
+    }
+
+    /**
+     * Admits a batch of transactions (e.g. relayed by a peer). Signatures are
+     * verified in parallel up front; each transaction is then admitted on its
+     * own, so one bad transaction does not reject the rest.
+     *
+     * @return The transactions that were accepted into the mempool
+     */
+    public List<Transaction> addTransactions(List<Transaction> transactions) {
+        Set<Transaction> invalid = Collections.newSetFromMap(new IdentityHashMap<>());
+        invalid.addAll(verifySignatures(transactions));
+
+        List<Transaction> accepted = new ArrayList<>();
+        for (Transaction tx : transactions) {
+            if (invalid.contains(tx)) {
+                System.out.println("Transaction rejected: " + tx.transactionId + " has invalid signature");
+                continue;
+            }
+            try {
+                admitVerifiedTransaction(tx);
+                accepted.add(tx);
+            } catch (RuntimeException e) {
+                System.out.println("Transaction rejected: " + tx.transactionId + " (" + e.getMessage() + ")");
+            }
+        }
+        return accepted;
+    }
+
+    // Admission checks after the signature has been verified
+    private void admitVerifiedTransaction(Transaction tx) {
+        // The ID must be the hash of the contents: replay protection and the mempool key on it
+        if (tx.transactionId == null || !tx.transactionId.equals(tx.calculateHash())) {
+            throw new RuntimeException("Transaction ID does not match its contents");
+        }
 
         // 2. Enforce Transaction Limits (e.g., non-negative, non-zero)
         if (tx.value <= 0) {
@@ -195,58 +658,46 @@ public class Blockchain {
             throw new RuntimeException("Transaction already processed (Replay Protection)");
         }
 
-        // 4. Check Balance (Prevent Double Spending)
+        // 4. Check Balance (Prevent Double Spending). The mempool checks pending
+        // spends and inserts atomically per sender, so concurrent admissions from
+        // peers, the CLI and HTTP cannot overspend.
         double balance = getBalance(tx.sender);
-        double pendingSpends = 0;
-        for (Transaction memTx : mempool) {
-            // Compare addresses
-            if (memTx.senderAddress != null && memTx.senderAddress.equals(tx.senderAddress)) {
-                pendingSpends += (memTx.value + memTx.fee);
-            }
-        }
-
-        if (balance - pendingSpends < (tx.value + tx.fee)) {
-            throw new RuntimeException("Insufficient Funds: Balance " + balance + ", Pending " + pendingSpends
-                    + ", Attempting " + (tx.value + tx.fee));
+        if (!mempool.add(tx, balance)) {
+            throw new RuntimeException("Transaction already processed (Replay Protection)");
         }
-
-        mempool.add(tx);
     }
 
     private boolean isTransactionInChain(String txId) {
-        for (Block block : chain) {
-            for (Transaction tx : block.transactions) {
-                if (tx.transactionId.equals(txId)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return txIndex.contains(txId);
     }
 
-    private boolean isTransactionInMempool(String txId) {
-        for (Transaction tx : mempool) {
-            if (tx.transactionId.equals(txId)) {
-                return true;
-            }
+    /**
+     * Looks up a committed transaction by ID.
+     *
+     * @return The transaction, or null if it is not in the chain (or its block
+     *         has been pruned)
+     */
+    public Transaction getTransaction(String txId) {
+        com.nexis.storage.TransactionIndex.Location loc = txIndex.find(txId);
+        if (loc == null || loc.height >= chain.size() || loc.height < chain.getFirstFullHeight()) {
+            return null;
         }
-        return false;
+        return chain.get(loc.height).transactions.get(loc.position);
     }
 
-    // Mine mempool with Proof of Work and Coinbase Reward + Fees
-    public void mineMempool(PublicKey minerAddress) {
-        // Enforce Permissioned Mining (Phase 7)
-        String minerAddressStr = KeyPairUtil.getAddressFromPublicKey(minerAddress);
-        if (!AccessControlManager.isValidatorAllowed(minerAddressStr)) {
-            System.err.println("Mining Blocked: Address " + minerAddressStr + " is not authorized.");
-            return;
-        }
+    private boolean isTransactionInMempool(String txId) {
+        return mempool.contains(txId);
+    }
 
-        // 1. Calculate total fees
-        double totalFees = 0;
-        for (Transaction tx : mempool) {
-            totalFees += tx.fee;
-        }
+    /**
+     * Builds the next (unmined, unsigned) block: the highest fee-rate mempool
+     * transactions that fit the NetworkConfig block budget, preceded by the
+     * coinbase and treasury payouts. Unselected transactions stay queued.
+     */
+    public synchronized Block createBlockTemplate(PublicKey rewardRecipient) {
+        // 1. Select transactions and calculate total fees
+        BlockTemplate template = BlockTemplate.select(mempool.snapshot());
+        double totalFees = template.getTotalFees();
 
         // 2. Check Max Supply (simplified)
         double reward = BLOCK_REWARD;
@@ -259,14 +710,11 @@ public class Blockchain {
         double treasuryShare = totalPot * TREASURY_PERCENTAGE;
         double minerShare = totalPot - treasuryShare;
 
-        // 4. Record Revenue
-        revenueTracker.recordBlockRevenue(System.currentTimeMillis(), totalFees, reward, mempool.size());
-
-        // 5. Create Transactions
+        // 4. Create Transactions
         List<Transaction> blockTransactions = new ArrayList<>();
 
-        // Coinbase for Miner
-        Transaction coinbaseTx = new Transaction(null, minerAddress, minerShare, 0);
+        // Coinbase for Miner / Validator
+        Transaction coinbaseTx = new Transaction(null, rewardRecipient, minerShare, 0);
         coinbaseTx.transactionId = coinbaseTx.calculateHash(); // Recalculate hash
         blockTransactions.add(coinbaseTx);
 
@@ -277,14 +725,56 @@ public class Blockchain {
             blockTransactions.add(treasuryTx);
         }
 
-        blockTransactions.addAll(mempool);
+        blockTransactions.addAll(template.getTransactions());
+
+        return new Block(chain.size(), getLatestBlock().hash, blockTransactions, totalFees, reward);
+    }
+
+    /**
+     * Appends a block we produced if it still extends the tip, records its
+     * revenue and persists the chain.
+     *
+     * @return false if another block was accepted first and ours is stale
+     */
+    public synchronized boolean appendMinedBlock(Block block) {
+        if (!tryAppendBlock(block)) {
+            return false;
+        }
+        int userTransactions = 0;
+        for (Transaction tx : block.transactions) {
+            if (tx.sender != null) {
+                userTransactions++;
+            }
+        }
+        // Logged ahead of the block's commit, and made durable with it
+        revenueTracker.recordBlockRevenue(System.currentTimeMillis(), block.totalFees, block.blockReward,
+                userTransactions);
+        chainStore.save(this); // Queued; the disk is written by the chain store's writer thread
+        return true;
+    }
+
+    // Enforce Permissioned Mining (Phase 7)
+    public boolean isMinerAllowed(PublicKey minerAddress) {
+        String minerAddressStr = KeyPairUtil.getAddressFromPublicKey(minerAddress);
+        if (!AccessControlManager.isValidatorAllowed(minerAddressStr)) {
+            System.err.println("Mining Blocked: Address " + minerAddressStr + " is not authorized.");
+            return false;
+        }
+        return true;
+    }
+
+    // Mine mempool with Proof of Work and Coinbase Reward + Fees
+    public void mineMempool(PublicKey minerAddress) {
+        if (!isMinerAllowed(minerAddress)) {
+            return;
+        }
 
-        Block newBlock = new Block(chain.size(), getLatestBlock().hash, blockTransactions, totalFees, reward);
+        Block newBlock = createBlockTemplate(minerAddress);
         newBlock.mineBlock(DIFFICULTY);
 
-        chain.add(newBlock);
-        mempool.clear();
-        chainStore.save(this);
+        if (!appendMinedBlock(newBlock)) {
+            System.out.println("Block #" + newBlock.index + " is stale (tip changed while mining). Discarded.");
+        }
     }
 
     // PoS version of mining
@@ -297,52 +787,17 @@ public class Blockchain {
             return;
         }
 
-        // 1. Calculate total fees
-        double totalFees = 0;
-        for (Transaction tx : mempool) {
-            totalFees += tx.fee;
-        }
-
-        // 2. Create Coinbase Transaction
-        double reward = BLOCK_REWARD;
-        if (getCurrentSupply() + BLOCK_REWARD > MAX_SUPPLY) {
-            reward = Math.max(0, MAX_SUPPLY - getCurrentSupply());
-        }
-
-        // 3. Calculate Treasury Share
-        double totalPot = reward + totalFees;
-        double treasuryShare = totalPot * TREASURY_PERCENTAGE;
-        double minerShare = totalPot - treasuryShare;
-
-        // 4. Record Revenue
-        revenueTracker.recordBlockRevenue(System.currentTimeMillis(), totalFees, reward, mempool.size());
-
-        List<Transaction> blockTransactions = new ArrayList<>();
-
-        // Coinbase for Validator
-        Transaction coinbaseTx = new Transaction(null, validatorWallet.publicKey, minerShare, 0);
-        coinbaseTx.transactionId = coinbaseTx.calculateHash();
-        blockTransactions.add(coinbaseTx);
-
-        // Treasury Transaction
-        if (treasuryShare > 0) {
-            Transaction treasuryTx = new Transaction(null, TREASURY_ADDRESS, treasuryShare, 0);
-            treasuryTx.transactionId = treasuryTx.calculateHash();
-            blockTransactions.add(treasuryTx);
-        }
-
-        blockTransactions.addAll(mempool);
-
-        Block newBlock = new Block(chain.size(), getLatestBlock().hash, blockTransactions, totalFees, reward);
+        Block newBlock = createBlockTemplate(validatorWallet.publicKey);
         newBlock.validator = validatorAddr;
 
         // Sign the block hash
         newBlock.validatorSignature = com.nexis.crypto.SignatureUtil.applyECDSASig(validatorWallet.privateKey,
                 newBlock.hash);
 
-        chain.add(newBlock);
-        mempool.clear();
-        chainStore.save(this);
+        if (!appendMinedBlock(newBlock)) {
+            System.out.println("Block #" + newBlock.index + " is stale (tip changed while producing). Discarded.");
+            return;
+        }
         System.out.println("Block #" + newBlock.index + " produced by Validator: " + validatorAddr);
     }
 
@@ -352,7 +807,7 @@ public class Blockchain {
 
     // --- PROOF OF STAKE ---
 
-    public void stake(PublicKey publicKey, double amount) {
+    public synchronized void stake(PublicKey publicKey, double amount) {
         String address = KeyPairUtil.getAddressFromPublicKey(publicKey);
         double balance = getBalance(publicKey);
 
@@ -371,7 +826,7 @@ public class Blockchain {
         System.out.println("Staked " + amount + " NXS. Total stake for " + address + ": " + stakes.get(address));
     }
 
-    public String selectValidator() {
+    public synchronized String selectValidator() {
         if (stakes.isEmpty()) {
             return null;
         }
@@ -399,13 +854,13 @@ public class Blockchain {
 
     // --- GOVERNANCE ---
 
-    public void createProposal(String id, String description, String proposer) {
+    public synchronized void createProposal(String id, String description, String proposer) {
         Proposal p = new Proposal(id, description, proposer, 86400000); // 24h duration
         proposals.put(id, p);
         System.out.println("Proposal created: " + id);
     }
 
-    public void vote(String proposalId, PublicKey voterKey) {
+    public synchronized void vote(String proposalId, PublicKey voterKey) {
         Proposal p = proposals.get(proposalId);
         if (p == null)
             throw new RuntimeException("Proposal not found");
@@ -423,14 +878,14 @@ public class Blockchain {
 
     // --- SMART CONTRACTS ---
 
-    public void deployContract(String owner, String script) {
+    public synchronized void deployContract(String owner, String script) {
         String address = com.nexis.crypto.HashUtil.applySha256(owner + script + System.currentTimeMillis());
         SmartContract sc = new SmartContract(address, owner, script);
         contracts.put(address, sc);
         System.out.println("Contract deployed at: " + address);
     }
 
-    public int callContract(String address, int input) {
+    public synchronized int callContract(String address, int input) {
         SmartContract sc = contracts.get(address);
         if (sc == null)
             throw new RuntimeException("Contract not found");
@@ -0,0 +1,75 @@
+package com.nexis.core;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Full-chain validation used when a chain is loaded from disk.
+ *
+ * The cheap index and previous-hash links are checked sequentially first. Block
+ * hashes/proofs, Merkle roots and transaction signatures do not depend on each
+ * other, so they are spread across a fork-join pool (one worker per core by
+ * default).
+ */
+public class ChainValidator {
+
+    private static final int PROGRESS_STEPS = 10;
+
+    private final Blockchain blockchain;
+    private final int parallelism;
+
+    public ChainValidator(Blockchain blockchain) {
+        this(blockchain, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ChainValidator(Blockchain blockchain, int parallelism) {
+        this.blockchain = blockchain;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public boolean validate(List<Block> chain) {
+        long start = System.currentTimeMillis();
+        int total = chain.size() - 1;
+
+        // 1. Sequential link checks
+        for (int i = 1; i < chain.size(); i++) {
+            if (!blockchain.isValidLink(chain.get(i), chain.get(i - 1))) {
+                return false;
+            }
+        }
+
+        // 2. Parallel hash, proof and signature checks
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        AtomicInteger checked = new AtomicInteger();
+        int progressInterval = Math.max(1, total / PROGRESS_STEPS);
+        try {
+            // Parallel streams started inside the pool (including the nested one) run on it
+            boolean valid = pool.submit(() -> IntStream.rangeClosed(1, total).parallel().allMatch(i -> {
+                Block block = chain.get(i);
+                boolean ok = blockchain.isValidBlockHeader(block) && blockchain.isValidBlockBody(block)
+                        && block.transactions.parallelStream().allMatch(blockchain::isValidTransaction);
+
+                int done = checked.incrementAndGet();
+                if (ok && total >= PROGRESS_STEPS && done % progressInterval == 0) {
+                    System.out.println("Validating chain: " + done + "/" + total + " blocks");
+                }
+                return ok;
+            })).get();
+
+            System.out.println("Chain validation " + (valid ? "passed" : "FAILED") + ": " + chain.size()
+                    + " blocks in " + (System.currentTimeMillis() - start) + " ms (" + parallelism + " threads)");
+            return valid;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            System.err.println("Chain validation error: " + e.getCause());
+            return false;
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -4,7 +4,7 @@ public class FeeModel {
 
     public static final double BASE_FEE = 0.1;
     public static final double MIN_FEE = 0.01;
-    public static final double MAX_BLOCK_SIZE = 1000.0; // Simulated unit size
+    public static final double MAX_BLOCK_SIZE = 1000.0; // KB, enforced via NetworkConfig.getMaxBlockBytes()
 
     // Simply calculate fee based on data size (simulated) and network congestion
     public static double calculateRequiredFee(int txSizeInBytes, double currentBlockFullnessPercent) {
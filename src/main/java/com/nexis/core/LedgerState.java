@@ -0,0 +1,100 @@
+package com.nexis.core;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Account balances and supply counters derived from the committed chain.
+ *
+ * Updated incrementally as blocks are appended (and reverted when blocks are
+ * rolled back), so lookups cost O(1) regardless of chain height.
+ */
+public class LedgerState {
+
+    private final Map<String, Double> balances = new ConcurrentHashMap<>();
+
+    // Supply counters (persisted next to the chain by ChainStore)
+    private volatile double issuedSupply;
+    private volatile double totalFees;
+
+    public synchronized void applyBlock(Block block) {
+        totalFees += block.totalFees;
+        for (Transaction tx : block.transactions) {
+            // Coinbase/Treasury transactions have no sender (null)
+            if (tx.sender == null) {
+                issuedSupply += tx.value;
+            }
+            if (tx.recipientAddress != null) {
+                credit(tx.recipientAddress, tx.value);
+            }
+            if (tx.senderAddress != null) {
+                credit(tx.senderAddress, -(tx.value + tx.fee));
+            }
+        }
+    }
+
+    public synchronized void revertBlock(Block block) {
+        totalFees -= block.totalFees;
+        // Walk backwards so the ledger passes through the same intermediate states
+        for (int i = block.transactions.size() - 1; i >= 0; i--) {
+            Transaction tx = block.transactions.get(i);
+            if (tx.sender == null) {
+                issuedSupply -= tx.value;
+            }
+            if (tx.senderAddress != null) {
+                credit(tx.senderAddress, tx.value + tx.fee);
+            }
+            if (tx.recipientAddress != null) {
+                credit(tx.recipientAddress, -tx.value);
+            }
+        }
+    }
+
+    public double getBalance(String address) {
+        return balances.getOrDefault(address, 0.0);
+    }
+
+    public double getIssuedSupply() {
+        return issuedSupply;
+    }
+
+    public double getTreasuryBalance() {
+        return getBalance(Blockchain.TREASURY_ADDRESS);
+    }
+
+    public double getTotalFees() {
+        return totalFees;
+    }
+
+    public int getAccountCount() {
+        return balances.size();
+    }
+
+    /**
+     * @return A copy of every account balance
+     */
+    public synchronized Map<String, Double> getBalances() {
+        return new HashMap<>(balances);
+    }
+
+    /**
+     * Replaces the state with one saved in a snapshot.
+     */
+    public synchronized void restore(Map<String, Double> balances, double issuedSupply, double totalFees) {
+        this.balances.clear();
+        this.balances.putAll(balances);
+        this.issuedSupply = issuedSupply;
+        this.totalFees = totalFees;
+    }
+
+    public synchronized void clear() {
+        balances.clear();
+        issuedSupply = 0;
+        totalFees = 0;
+    }
+
+    private void credit(String address, double amount) {
+        balances.merge(address, amount, Double::sum);
+    }
+}
@@ -0,0 +1,362 @@
+package com.nexis.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Pending transactions waiting to be included in a block.
+ *
+ * Transactions are ordered by fee rate (fee per serialized byte), highest first,
+ * with O(log n) insert and remove. The pool is capped by transaction count and
+ * total serialized bytes; when full, the lowest fee rate is evicted. Entries
+ * older than the configured expiry are dropped.
+ *
+ * Keeps per-sender aggregates (pending spend, count, highest fee) up to date on
+ * every insert and removal, so double-spend checks are O(1) per admission.
+ *
+ * Thread-safe: admissions and removals lock only the stripe of the sender
+ * involved, so different senders are admitted in parallel. Snapshots and
+ * evictions take the pool-wide write lock and see a consistent view.
+ */
+public class Mempool implements Iterable<Transaction> {
+
+    private static final int LOCK_STRIPES = 64;
+
+    /**
+     * Running totals for one sender's pending transactions. Guarded by the
+     * sender's stripe lock.
+     */
+    public static class SenderLedger {
+        private double pendingSpend;
+        private int count;
+        // fee -> number of pending transactions paying it
+        private final TreeMap<Double, Integer> fees = new TreeMap<>();
+
+        public synchronized double getPendingSpend() {
+            return pendingSpend;
+        }
+
+        public synchronized int getCount() {
+            return count;
+        }
+
+        public synchronized double getHighestFee() {
+            return fees.isEmpty() ? 0.0 : fees.lastKey();
+        }
+
+        private synchronized void add(Transaction tx) {
+            pendingSpend += tx.value + tx.fee;
+            count++;
+            fees.merge(tx.fee, 1, Integer::sum);
+        }
+
+        private synchronized void remove(Transaction tx) {
+            pendingSpend -= tx.value + tx.fee;
+            count--;
+            fees.computeIfPresent(tx.fee, (fee, n) -> n > 1 ? n - 1 : null);
+        }
+    }
+
+    // Immutable ordering key for one pending transaction
+    private static class Entry {
+        final Transaction tx;
+        final double feeRate;
+        final int size;
+        final long addedAt;
+
+        Entry(Transaction tx, long addedAt) {
+            this.tx = tx;
+            this.size = tx.getSerializedSize();
+            this.feeRate = tx.fee / size;
+            this.addedAt = addedAt;
+        }
+    }
+
+    // Highest fee rate first; older first on ties
+    private static final Comparator<Entry> BY_FEE_RATE = Comparator
+            .comparingDouble((Entry e) -> -e.feeRate)
+            .thenComparingLong(e -> e.addedAt)
+            .thenComparing(e -> e.tx.transactionId);
+
+    private static final Comparator<Entry> BY_ARRIVAL = Comparator
+            .comparingLong((Entry e) -> e.addedAt)
+            .thenComparing(e -> e.tx.transactionId);
+
+    private final int maxTransactions;
+    private final long maxBytes;
+    private final long expiryMillis;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Entry> byFeeRate = new ConcurrentSkipListSet<>(BY_FEE_RATE);
+    private final ConcurrentSkipListSet<Entry> byArrival = new ConcurrentSkipListSet<>(BY_ARRIVAL);
+    private final Map<String, SenderLedger> senders = new ConcurrentHashMap<>();
+    private final AtomicInteger count = new AtomicInteger();
+    private final AtomicLong totalBytes = new AtomicLong();
+
+    // Read side: per-sender operations. Write side: snapshots, eviction, clear.
+    private final ReentrantReadWriteLock poolLock = new ReentrantReadWriteLock();
+    private final ReentrantLock[] stripes = new ReentrantLock[LOCK_STRIPES];
+
+    public Mempool() {
+        this(NetworkConfig.getInstance().getMaxMempoolTransactions(),
+                NetworkConfig.getInstance().getMaxMempoolBytes(),
+                NetworkConfig.getInstance().getMempoolExpiryMillis());
+    }
+
+    public Mempool(int maxTransactions, long maxBytes, long expiryMillis) {
+        this.maxTransactions = maxTransactions;
+        this.maxBytes = maxBytes;
+        this.expiryMillis = expiryMillis;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    public boolean add(Transaction tx) {
+        return add(tx, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Adds a transaction if its sender can cover it on top of their pending
+     * spends. The balance check and the insert are atomic per sender. Evicts
+     * lower fee-rate transactions if the pool is full.
+     *
+     * @param spendableBalance Sender's confirmed balance
+     * @return false if the transaction was already pending
+     * @throws RuntimeException on insufficient funds, or if the pool is full and
+     *                          the transaction does not pay more than the
+     *                          cheapest pending one
+     */
+    public boolean add(Transaction tx, double spendableBalance) {
+        expire(System.currentTimeMillis());
+        Entry entry = new Entry(tx, System.currentTimeMillis());
+
+        while (true) {
+            poolLock.readLock().lock();
+            ReentrantLock stripe = stripeFor(tx.senderAddress);
+            stripe.lock();
+            try {
+                if (entries.containsKey(tx.transactionId)) {
+                    return false;
+                }
+                checkFunds(tx, spendableBalance);
+
+                // Reserve capacity; on overflow release it and take the exclusive path
+                boolean countFits = count.incrementAndGet() <= maxTransactions;
+                boolean bytesFit = totalBytes.addAndGet(entry.size) <= maxBytes;
+                if (countFits && bytesFit) {
+                    insert(entry);
+                    return true;
+                }
+                count.decrementAndGet();
+                totalBytes.addAndGet(-entry.size);
+            } finally {
+                stripe.unlock();
+                poolLock.readLock().unlock();
+            }
+
+            if (makeRoom(entry)) {
+                continue; // Space was freed (or already available); retry admission
+            }
+            throw new RuntimeException("Mempool full: fee rate " + entry.feeRate + " too low");
+        }
+    }
+
+    /**
+     * Removes a transaction, e.g. after it was included in a block or evicted.
+     *
+     * @return The removed transaction, or null if it was not pending
+     */
+    public Transaction remove(String txId) {
+        Entry entry = entries.get(txId);
+        if (entry == null) {
+            return null;
+        }
+        poolLock.readLock().lock();
+        ReentrantLock stripe = stripeFor(entry.tx.senderAddress);
+        stripe.lock();
+        try {
+            return entries.remove(txId, entry) ? detach(entry) : null;
+        } finally {
+            stripe.unlock();
+            poolLock.readLock().unlock();
+        }
+    }
+
+    public void removeAll(Collection<Transaction> included) {
+        for (Transaction tx : included) {
+            remove(tx.transactionId);
+        }
+    }
+
+    /**
+     * Drops transactions that have been pending longer than the expiry.
+     *
+     * @return Number of transactions removed
+     */
+    public int expire(long now) {
+        int removed = 0;
+        Entry oldest;
+        while ((oldest = firstOrNull(byArrival)) != null && now - oldest.addedAt >= expiryMillis) {
+            if (remove(oldest.tx.transactionId) != null) {
+                removed++;
+            } else {
+                byArrival.remove(oldest); // Raced with another removal
+            }
+        }
+        return removed;
+    }
+
+    public boolean contains(String txId) {
+        return entries.containsKey(txId);
+    }
+
+    public Transaction get(String txId) {
+        Entry entry = entries.get(txId);
+        return entry == null ? null : entry.tx;
+    }
+
+    public double getPendingSpend(String senderAddress) {
+        SenderLedger ledger = senders.get(senderAddress);
+        return ledger == null ? 0.0 : ledger.getPendingSpend();
+    }
+
+    public SenderLedger getSenderLedger(String senderAddress) {
+        return senders.get(senderAddress);
+    }
+
+    /**
+     * Atomic copy of the pending transactions, highest fee rate first. No
+     * admission or removal is half-applied in the result.
+     */
+    public List<Transaction> snapshot() {
+        expire(System.currentTimeMillis());
+        poolLock.writeLock().lock();
+        try {
+            List<Transaction> result = new ArrayList<>(count.get());
+            for (Entry entry : byFeeRate) {
+                result.add(entry.tx);
+            }
+            return result;
+        } finally {
+            poolLock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        return count.get();
+    }
+
+    public long getTotalBytes() {
+        return totalBytes.get();
+    }
+
+    public boolean isEmpty() {
+        return count.get() == 0;
+    }
+
+    public void clear() {
+        poolLock.writeLock().lock();
+        try {
+            entries.clear();
+            byFeeRate.clear();
+            byArrival.clear();
+            senders.clear();
+            count.set(0);
+            totalBytes.set(0);
+        } finally {
+            poolLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Iterator<Transaction> iterator() {
+        return snapshot().iterator();
+    }
+
+    private void checkFunds(Transaction tx, double spendableBalance) {
+        double pendingSpends = getPendingSpend(tx.senderAddress);
+        if (spendableBalance - pendingSpends < (tx.value + tx.fee)) {
+            throw new RuntimeException("Insufficient Funds: Balance " + spendableBalance + ", Pending "
+                    + pendingSpends + ", Attempting " + (tx.value + tx.fee));
+        }
+    }
+
+    // Caller holds the read lock and the sender's stripe; capacity is reserved
+    private void insert(Entry entry) {
+        entries.put(entry.tx.transactionId, entry);
+        byFeeRate.add(entry);
+        byArrival.add(entry);
+        if (entry.tx.senderAddress != null) {
+            senders.computeIfAbsent(entry.tx.senderAddress, k -> new SenderLedger()).add(entry.tx);
+        }
+    }
+
+    // Caller holds the read lock and the sender's stripe, or the write lock
+    private Transaction detach(Entry entry) {
+        byFeeRate.remove(entry);
+        byArrival.remove(entry);
+        count.decrementAndGet();
+        totalBytes.addAndGet(-entry.size);
+
+        Transaction tx = entry.tx;
+        if (tx.senderAddress != null) {
+            SenderLedger ledger = senders.get(tx.senderAddress);
+            ledger.remove(tx);
+            if (ledger.getCount() == 0) {
+                senders.remove(tx.senderAddress);
+            }
+        }
+        return tx;
+    }
+
+    /**
+     * Evicts lower fee-rate transactions under the write lock until the
+     * candidate fits.
+     *
+     * @return false if the candidate does not outbid the cheapest entry
+     */
+    private boolean makeRoom(Entry candidate) {
+        poolLock.writeLock().lock();
+        try {
+            while (count.get() + 1 > maxTransactions || totalBytes.get() + candidate.size > maxBytes) {
+                Entry lowest = firstOrNull(byFeeRate.descendingSet());
+                if (lowest == null || lowest.feeRate >= candidate.feeRate) {
+                    return false;
+                }
+                if (entries.remove(lowest.tx.transactionId, lowest)) {
+                    detach(lowest);
+                }
+            }
+            return true;
+        } finally {
+            poolLock.writeLock().unlock();
+        }
+    }
+
+    private ReentrantLock stripeFor(String senderAddress) {
+        int hash = senderAddress == null ? 0 : senderAddress.hashCode();
+        return stripes[Math.floorMod(hash ^ (hash >>> 16), LOCK_STRIPES)];
+    }
+
+    private static Entry firstOrNull(NavigableSet<Entry> set) {
+        try {
+            return set.first();
+        } catch (NoSuchElementException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.nexis.core;
+
+import com.nexis.crypto.HashUtil;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Merkle root over a block's transaction IDs.
+ *
+ * Leaves are the raw 32-byte transaction hashes; each level hashes pairs of
+ * nodes, duplicating the last one when the count is odd. A block without
+ * transactions has an all-zero root.
+ *
+ * Because of the duplication, a list ending in a repeated transaction has the
+ * same root as the list without the repeat; blocks must therefore not contain
+ * the same transaction twice (see {@link #hasDuplicateIds}).
+ */
+public class MerkleTree {
+
+    private static final int HASH = HashUtil.SHA256_LENGTH;
+
+    /**
+     * @return true if a transaction ID occurs more than once
+     */
+    public static boolean hasDuplicateIds(List<Transaction> transactions) {
+        Set<String> ids = new HashSet<>(transactions.size() * 2);
+        for (Transaction tx : transactions) {
+            if (!ids.add(tx.transactionId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static String computeRoot(List<Transaction> transactions) {
+        int n = transactions.size();
+        if (n == 0) {
+            return HashUtil.bytesToHex(new byte[HASH]);
+        }
+        byte[] level = new byte[n * HASH];
+        for (int i = 0; i < n; i++) {
+            String txId = transactions.get(i).transactionId;
+            if (!HashUtil.isSha256Hex(txId)) {
+                throw new RuntimeException("Invalid transaction ID in Merkle tree: " + txId);
+            }
+            HashUtil.decodeHex(txId, level, i * HASH);
+        }
+
+        // Reduce in place: node i of the next level overwrites slot i
+        MessageDigest digest = HashUtil.sha256Digest();
+        try {
+            while (n > 1) {
+                int parents = (n + 1) / 2;
+                for (int i = 0; i < parents; i++) {
+                    int left = 2 * i;
+                    int right = Math.min(left + 1, n - 1);
+                    digest.update(level, left * HASH, HASH);
+                    digest.update(level, right * HASH, HASH);
+                    digest.digest(level, i * HASH, HASH);
+                }
+                n = parents;
+            }
+        } catch (DigestException e) {
+            throw new RuntimeException("Error computing Merkle root", e);
+        }
+        return HashUtil.bytesToHex(Arrays.copyOf(level, HASH));
+    }
+}
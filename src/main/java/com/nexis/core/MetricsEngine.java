@@ -41,7 +41,7 @@ public class MetricsEngine {
         return summary;
     }
     
-    // Expensive operation: iterates entire chain to find unique addresses
+    // Expensive operation: iterates entire chain (the kept blocks, if pruned) to find unique addresses
     private int calculateActiveWallets() {
         Set<String> activeAddresses = new HashSet<>();
         for (Block block : blockchain.chain) {
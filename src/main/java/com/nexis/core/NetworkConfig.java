@@ -10,6 +10,41 @@ public class NetworkConfig {
     private double minTransactionFee = 0.01;
     private int targetBlockTimeSeconds = 10;
 
+    // Block template budget
+    private int maxBlockBytes = (int) (FeeModel.MAX_BLOCK_SIZE * 1024); // Serialized transaction bytes
+    private int maxBlockTransactions = 2_000;
+
+    // Mempool limits
+    private int maxMempoolTransactions = 100_000;
+    private long maxMempoolBytes = 64L * 1024 * 1024; // 64 MB of serialized transactions
+    private long mempoolExpiryMillis = 60L * 60 * 1000; // 1 hour
+    private int signatureCacheSize = 200_000; // Verified (txId, signature) pairs kept
+    private int miningThreads = Runtime.getRuntime().availableProcessors();
+
+    // Orphan block pool limits
+    private long maxOrphanBytes = 32L * 1024 * 1024; // 32 MB of blocks waiting for their parent
+    private long orphanExpiryMillis = 10L * 60 * 1000; // 10 minutes
+
+    // Block store
+    private long maxSegmentBytes = 16L * 1024 * 1024; // Size at which a new segment file is started
+    private int pinnedBlocks = 256; // Most recent blocks always kept in memory
+    private long blockCacheBytes = 64L * 1024 * 1024; // LRU budget for older blocks read from disk
+    private boolean compressSegments = false; // Deflate old sealed segments (archive nodes)
+    private int uncompressedSegments = 2; // Most recent sealed segments left raw
+
+    // Write-ahead log
+    private String walFsyncPolicy = "always"; // always, interval or never
+    private long walGroupCommitMillis = 2; // How long a commit waits for others to share its fsync
+    private long walFsyncIntervalMillis = 1000; // Background fsync period for the interval policy
+    private long walCheckpointBytes = 8L * 1024 * 1024; // Log size that triggers a checkpoint
+    private boolean asyncPersistence = true; // Saves return once queued for the writer thread
+    private int persistQueueCapacity = 64; // Queued saves before savers block
+    private int snapshotInterval = 1000; // Blocks between state snapshots (0 disables them)
+
+    // Pruning
+    private boolean pruneMode = false; // Delete old block segments, keeping headers and the state snapshot
+    private int pruneKeepBlocks = 5000; // Most recent full blocks a pruned node keeps
+
     private NetworkConfig() {
         // Private constructor
     }
@@ -33,4 +68,188 @@ public class NetworkConfig {
     public void setMinTransactionFee(double minTransactionFee) {
         this.minTransactionFee = minTransactionFee;
     }
+
+    public int getMaxBlockBytes() {
+        return maxBlockBytes;
+    }
+
+    public void setMaxBlockBytes(int maxBlockBytes) {
+        this.maxBlockBytes = maxBlockBytes;
+    }
+
+    public int getMaxBlockTransactions() {
+        return maxBlockTransactions;
+    }
+
+    public void setMaxBlockTransactions(int maxBlockTransactions) {
+        this.maxBlockTransactions = maxBlockTransactions;
+    }
+
+    public int getMaxMempoolTransactions() {
+        return maxMempoolTransactions;
+    }
+
+    public void setMaxMempoolTransactions(int maxMempoolTransactions) {
+        this.maxMempoolTransactions = maxMempoolTransactions;
+    }
+
+    public long getMaxMempoolBytes() {
+        return maxMempoolBytes;
+    }
+
+    public void setMaxMempoolBytes(long maxMempoolBytes) {
+        this.maxMempoolBytes = maxMempoolBytes;
+    }
+
+    public long getMempoolExpiryMillis() {
+        return mempoolExpiryMillis;
+    }
+
+    public void setMempoolExpiryMillis(long mempoolExpiryMillis) {
+        this.mempoolExpiryMillis = mempoolExpiryMillis;
+    }
+
+    public int getSignatureCacheSize() {
+        return signatureCacheSize;
+    }
+
+    public void setSignatureCacheSize(int signatureCacheSize) {
+        this.signatureCacheSize = signatureCacheSize;
+    }
+
+    public int getMiningThreads() {
+        return miningThreads;
+    }
+
+    public void setMiningThreads(int miningThreads) {
+        this.miningThreads = miningThreads;
+    }
+
+    public long getMaxOrphanBytes() {
+        return maxOrphanBytes;
+    }
+
+    public void setMaxOrphanBytes(long maxOrphanBytes) {
+        this.maxOrphanBytes = maxOrphanBytes;
+    }
+
+    public long getOrphanExpiryMillis() {
+        return orphanExpiryMillis;
+    }
+
+    public void setOrphanExpiryMillis(long orphanExpiryMillis) {
+        this.orphanExpiryMillis = orphanExpiryMillis;
+    }
+
+    public long getMaxSegmentBytes() {
+        return maxSegmentBytes;
+    }
+
+    public void setMaxSegmentBytes(long maxSegmentBytes) {
+        this.maxSegmentBytes = maxSegmentBytes;
+    }
+
+    public int getPinnedBlocks() {
+        return pinnedBlocks;
+    }
+
+    public void setPinnedBlocks(int pinnedBlocks) {
+        this.pinnedBlocks = pinnedBlocks;
+    }
+
+    public boolean isCompressSegments() {
+        return compressSegments;
+    }
+
+    public void setCompressSegments(boolean compressSegments) {
+        this.compressSegments = compressSegments;
+    }
+
+    public int getUncompressedSegments() {
+        return uncompressedSegments;
+    }
+
+    public void setUncompressedSegments(int uncompressedSegments) {
+        this.uncompressedSegments = uncompressedSegments;
+    }
+
+    public long getBlockCacheBytes() {
+        return blockCacheBytes;
+    }
+
+    public void setBlockCacheBytes(long blockCacheBytes) {
+        this.blockCacheBytes = blockCacheBytes;
+    }
+
+    public String getWalFsyncPolicy() {
+        return walFsyncPolicy;
+    }
+
+    public void setWalFsyncPolicy(String walFsyncPolicy) {
+        this.walFsyncPolicy = walFsyncPolicy;
+    }
+
+    public long getWalGroupCommitMillis() {
+        return walGroupCommitMillis;
+    }
+
+    public void setWalGroupCommitMillis(long walGroupCommitMillis) {
+        this.walGroupCommitMillis = walGroupCommitMillis;
+    }
+
+    public long getWalFsyncIntervalMillis() {
+        return walFsyncIntervalMillis;
+    }
+
+    public void setWalFsyncIntervalMillis(long walFsyncIntervalMillis) {
+        this.walFsyncIntervalMillis = walFsyncIntervalMillis;
+    }
+
+    public long getWalCheckpointBytes() {
+        return walCheckpointBytes;
+    }
+
+    public void setWalCheckpointBytes(long walCheckpointBytes) {
+        this.walCheckpointBytes = walCheckpointBytes;
+    }
+
+    public boolean isAsyncPersistence() {
+        return asyncPersistence;
+    }
+
+    public void setAsyncPersistence(boolean asyncPersistence) {
+        this.asyncPersistence = asyncPersistence;
+    }
+
+    public int getPersistQueueCapacity() {
+        return persistQueueCapacity;
+    }
+
+    public void setPersistQueueCapacity(int persistQueueCapacity) {
+        this.persistQueueCapacity = persistQueueCapacity;
+    }
+
+    public int getSnapshotInterval() {
+        return snapshotInterval;
+    }
+
+    public void setSnapshotInterval(int snapshotInterval) {
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    public boolean isPruneMode() {
+        return pruneMode;
+    }
+
+    public void setPruneMode(boolean pruneMode) {
+        this.pruneMode = pruneMode;
+    }
+
+    public int getPruneKeepBlocks() {
+        return pruneKeepBlocks;
+    }
+
+    public void setPruneKeepBlocks(int pruneKeepBlocks) {
+        this.pruneKeepBlocks = pruneKeepBlocks;
+    }
 }
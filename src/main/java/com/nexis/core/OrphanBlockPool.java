@@ -0,0 +1,210 @@
+package com.nexis.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Blocks received before their parent, keyed by the missing parent hash.
+ *
+ * Blocks waiting on each other form small trees; once the parent of a tree's
+ * root is on the chain, the longest path from the root can be connected in
+ * order. The pool is bounded by total (approximate) block bytes and by age
+ * (NetworkConfig); the oldest entries are evicted first.
+ */
+public class OrphanBlockPool {
+
+    private static class Entry {
+        final Block block;
+        final long receivedAt;
+        final long bytes;
+
+        Entry(Block block, long receivedAt) {
+            this.block = block;
+            this.receivedAt = receivedAt;
+            this.bytes = block.getSerializedSize();
+        }
+    }
+
+    private final long maxBytes;
+    private final long expiryMillis;
+
+    // Insertion order is arrival order, so the first entry is the oldest
+    private final LinkedHashMap<String, Entry> byHash = new LinkedHashMap<>();
+    private final Map<String, List<Block>> byParent = new HashMap<>();
+    private long totalBytes;
+    private long evicted;
+
+    public OrphanBlockPool() {
+        this(NetworkConfig.getInstance().getMaxOrphanBytes(), NetworkConfig.getInstance().getOrphanExpiryMillis());
+    }
+
+    public OrphanBlockPool(long maxBytes, long expiryMillis) {
+        this.maxBytes = maxBytes;
+        this.expiryMillis = expiryMillis;
+    }
+
+    /**
+     * Adds a block waiting for its parent. Expired entries are dropped first,
+     * then the oldest ones until the pool fits its byte budget.
+     *
+     * @return false if the block was already pooled or does not fit at all
+     */
+    public synchronized boolean add(Block block, long now) {
+        if (byHash.containsKey(block.hash)) {
+            return false;
+        }
+        expire(now);
+
+        Entry entry = new Entry(block, now);
+        byHash.put(block.hash, entry);
+        byParent.computeIfAbsent(block.previousHash, k -> new ArrayList<>()).add(block);
+        totalBytes += entry.bytes;
+
+        while (totalBytes > maxBytes && !byHash.isEmpty()) {
+            removeEntry(byHash.keySet().iterator().next());
+            evicted++;
+        }
+        return byHash.containsKey(block.hash);
+    }
+
+    public synchronized boolean contains(String hash) {
+        return byHash.containsKey(hash);
+    }
+
+    public synchronized List<Block> getChildren(String parentHash) {
+        List<Block> children = byParent.get(parentHash);
+        return children == null ? Collections.emptyList() : new ArrayList<>(children);
+    }
+
+    /**
+     * @return The lowest pooled ancestor of {@code block} (the block itself if
+     *         its parent is not pooled); its parent is the one to look for
+     */
+    public synchronized Block getRoot(Block block) {
+        Block root = block;
+        Entry parent;
+        while ((parent = byHash.get(root.previousHash)) != null) {
+            root = parent.block;
+        }
+        return root;
+    }
+
+    /**
+     * @return The longest chain of pooled blocks starting at {@code root}, in
+     *         height order (ties go to the block that arrived first)
+     */
+    public synchronized List<Block> getLongestBranch(Block root) {
+        // Breadth-first, so the last block reached is one of the deepest
+        Block deepest = root;
+        Deque<Block> queue = new ArrayDeque<>();
+        queue.add(root);
+        while (!queue.isEmpty()) {
+            deepest = queue.poll();
+            List<Block> children = byParent.get(deepest.hash);
+            if (children != null) {
+                queue.addAll(children);
+            }
+        }
+
+        List<Block> branch = new ArrayList<>();
+        for (Block block = deepest; block != root; block = byHash.get(block.previousHash).block) {
+            branch.add(block);
+        }
+        branch.add(root);
+        Collections.reverse(branch);
+        return branch;
+    }
+
+    public synchronized void remove(String hash) {
+        removeEntry(hash);
+    }
+
+    /**
+     * Removes a block and every pooled block built on it (e.g. when it turned
+     * out to be invalid).
+     *
+     * @return The number of blocks removed
+     */
+    public synchronized int removeWithDescendants(String hash) {
+        int removed = 0;
+        Deque<String> pending = new ArrayDeque<>();
+        pending.add(hash);
+        while (!pending.isEmpty()) {
+            String next = pending.poll();
+            List<Block> children = byParent.get(next);
+            if (children != null) {
+                for (Block child : children) {
+                    pending.add(child.hash);
+                }
+            }
+            if (removeEntry(next)) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Drops blocks older than the expiry.
+     *
+     * @return The number of blocks dropped
+     */
+    public synchronized int expire(long now) {
+        int dropped = 0;
+        Iterator<Entry> it = byHash.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (now - entry.receivedAt < expiryMillis) {
+                break; // Arrival order: the rest are younger
+            }
+            it.remove();
+            unlinkFromParent(entry.block);
+            totalBytes -= entry.bytes;
+            dropped++;
+        }
+        evicted += dropped;
+        return dropped;
+    }
+
+    public synchronized int size() {
+        return byHash.size();
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return Blocks dropped for age or memory since startup
+     */
+    public synchronized long getEvictedCount() {
+        return evicted;
+    }
+
+    private boolean removeEntry(String hash) {
+        Entry entry = byHash.remove(hash);
+        if (entry == null) {
+            return false;
+        }
+        unlinkFromParent(entry.block);
+        totalBytes -= entry.bytes;
+        return true;
+    }
+
+    private void unlinkFromParent(Block block) {
+        List<Block> siblings = byParent.get(block.previousHash);
+        if (siblings != null) {
+            siblings.remove(block);
+            if (siblings.isEmpty()) {
+                byParent.remove(block.previousHash);
+            }
+        }
+    }
+}
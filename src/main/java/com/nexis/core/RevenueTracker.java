@@ -2,16 +2,45 @@ package com.nexis.core;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.InstanceCreator;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.nexis.storage.ChainStore;
+import com.nexis.storage.WriteAheadLog;
+import com.nexis.utils.FileUtil;
 import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+/**
+ * Revenue statistics. With a write-ahead log, each block's revenue travels
+ * inside the chain commit record that stores the block, and is counted once
+ * the chain store's writer has logged that commit: revenue is never counted
+ * for a block that did not become durable. The stats file is only rewritten
+ * at checkpoints, by the writer, before it empties the log; on startup the
+ * file is read and the commits logged after it are replayed.
+ */
 public class RevenueTracker {
 
     private static final String STATS_FILE = "revenue_stats.json";
+    public static final byte RECORD_REVENUE = 2; // Write-ahead log record type
+
+    /**
+     * Logged revenue of one block.
+     */
+    public static class RevenueUpdate {
+        long timestamp;
+        double fees;
+        double reward;
+        int txCount;
+    }
     
     // Revenue Data
     public double totalFeesAllTime;
@@ -28,13 +57,79 @@ public class RevenueTracker {
     public double estimatedValidatorCostPerBlock = 0.05; // Simulated electricity/hardware cost
 
     private transient Gson gson; // Don't serialize the Gson instance itself
+    private transient WriteAheadLog wal;
+    private transient long walSequence; // Last logged commit included in the stats
+    private transient File statsFile;
+    private transient List<RevenueUpdate> pending; // Recorded, not yet handed to a commit
 
     public RevenueTracker() {
+        this(null);
+    }
+
+    public RevenueTracker(WriteAheadLog wal) {
+        this(wal, new File(STATS_FILE));
+    }
+
+    public RevenueTracker(WriteAheadLog wal, File statsFile) {
         this.gson = new GsonBuilder().setPrettyPrinting().create();
+        this.wal = wal;
+        this.statsFile = statsFile;
+        this.pending = new ArrayList<>();
         load();
+        if (wal != null) {
+            replay();
+        }
     }
 
+    /**
+     * Records a block's revenue. With a write-ahead log the update waits for
+     * the next chain save to carry it (see {@link #takePending}); otherwise it
+     * is counted and the stats file rewritten.
+     */
     public synchronized void recordBlockRevenue(long timestamp, double fees, double reward, int txCount) {
+        if (wal == null) {
+            apply(timestamp, fees, reward, txCount);
+            save();
+            return;
+        }
+        RevenueUpdate update = new RevenueUpdate();
+        update.timestamp = timestamp;
+        update.fees = fees;
+        update.reward = reward;
+        update.txCount = txCount;
+        pending.add(update);
+    }
+
+    /**
+     * @return What {@link #takePending} would return, without clearing it
+     */
+    public synchronized List<RevenueUpdate> getPending() {
+        return new ArrayList<>(pending);
+    }
+
+    /**
+     * @return Updates recorded since the previous call, for the commit record
+     *         of the blocks they belong to
+     */
+    public synchronized List<RevenueUpdate> takePending() {
+        List<RevenueUpdate> updates = new ArrayList<>(pending);
+        pending.clear();
+        return updates;
+    }
+
+    /**
+     * Counts updates once the commit carrying them is logged.
+     *
+     * @param sequence Write-ahead log sequence of that commit
+     */
+    public synchronized void applyLogged(List<RevenueUpdate> updates, long sequence) {
+        for (RevenueUpdate update : updates) {
+            apply(update.timestamp, update.fees, update.reward, update.txCount);
+        }
+        walSequence = sequence;
+    }
+
+    private void apply(long timestamp, double fees, double reward, int txCount) {
         totalFeesAllTime += fees;
         totalRewardsAllTime += reward;
         totalTxCountAllTime += txCount;
@@ -44,8 +139,42 @@ public class RevenueTracker {
         dailyFees.put(dateKey, dailyFees.getOrDefault(dateKey, 0.0) + fees);
         dailyRewards.put(dateKey, dailyRewards.getOrDefault(dateKey, 0.0) + reward);
         dailyTxCount.put(dateKey, dailyTxCount.getOrDefault(dateKey, 0) + txCount);
-        
-        save();
+    }
+
+    // Applies the updates of the commits logged after the stats file was written
+    private void replay() {
+        if (walSequence > wal.getLastSequence()) {
+            walSequence = 0; // Saved against a log that no longer exists
+        }
+        int replayed = 0;
+        // Older logs hold revenue as separate records written just before their
+        // commit; they only count once that commit is found
+        List<RevenueUpdate> logged = new ArrayList<>();
+        for (WriteAheadLog.Record record : wal.getRecovered()) {
+            if (record.sequence <= walSequence) {
+                continue;
+            }
+            String payload = new String(record.payload, StandardCharsets.UTF_8);
+            if (record.type == RECORD_REVENUE) {
+                logged.add(gson.fromJson(payload, RevenueUpdate.class));
+                continue;
+            }
+            if (record.type != ChainStore.RECORD_COMMIT) {
+                continue;
+            }
+            JsonObject commit = JsonParser.parseString(payload).getAsJsonObject();
+            if (commit.has("revenue")) {
+                for (JsonElement update : commit.getAsJsonArray("revenue")) {
+                    logged.add(gson.fromJson(update, RevenueUpdate.class));
+                }
+            }
+            replayed += logged.size();
+            applyLogged(logged, record.sequence);
+            logged.clear();
+        }
+        if (replayed > 0) {
+            System.out.println("Replayed " + replayed + " revenue update(s) from the write-ahead log");
+        }
     }
     
     private String convertTimestampToDate(long timestamp) {
@@ -56,30 +185,34 @@ public class RevenueTracker {
         return date.toString(); // YYYY-MM-DD
     }
 
-    public void save() {
-        try (FileWriter writer = new FileWriter(STATS_FILE)) {
-            gson.toJson(this, writer);
+    /**
+     * Rewrites the stats file (atomically), noting the last logged commit it
+     * includes. Called at checkpoints when a write-ahead log is used.
+     */
+    public synchronized void save() {
+        JsonObject json = gson.toJsonTree(this).getAsJsonObject();
+        json.addProperty("walSequence", walSequence);
+        try {
+            FileUtil.writeAtomically(statsFile, gson.toJson(json));
         } catch (IOException e) {
             System.err.println("Failed to save revenue stats: " + e.getMessage());
         }
     }
 
-    public void load() {
-        File file = new File(STATS_FILE);
-        if (!file.exists()) {
+    public synchronized void load() {
+        if (!statsFile.exists()) {
             return;
         }
 
-        try (FileReader reader = new FileReader(STATS_FILE)) {
-            RevenueTracker loaded = gson.fromJson(reader, RevenueTracker.class);
-            if (loaded != null) {
-                this.totalFeesAllTime = loaded.totalFeesAllTime;
-                this.totalRewardsAllTime = loaded.totalRewardsAllTime;
-                this.dailyFees = loaded.dailyFees;
-                this.dailyRewards = loaded.dailyRewards;
-                this.estimatedValidatorCostPerBlock = loaded.estimatedValidatorCostPerBlock;
-            }
-        } catch (IOException e) {
+        try (FileReader reader = new FileReader(statsFile)) {
+            JsonObject json = JsonParser.parseReader(reader).getAsJsonObject();
+            // Fill this instance; letting Gson construct a RevenueTracker would load again
+            new GsonBuilder()
+                    .registerTypeAdapter(RevenueTracker.class, (InstanceCreator<RevenueTracker>) type -> this)
+                    .create()
+                    .fromJson(json, RevenueTracker.class);
+            walSequence = json.has("walSequence") ? json.get("walSequence").getAsLong() : 0;
+        } catch (IOException | JsonParseException | IllegalStateException e) {
             System.err.println("Failed to load revenue stats: " + e.getMessage());
         }
     }
@@ -0,0 +1,85 @@
+package com.nexis.core;
+
+import com.nexis.crypto.HashUtil;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Transactions whose signature has already been verified.
+ *
+ * Entries are (txId, digest of signature and sender key) pairs, so a cached
+ * transaction re-sent with a different signature or key is verified again.
+ * The txId is only trusted when it is the hash of the transaction's contents:
+ * otherwise a cached ID and signature could be sent with another recipient,
+ * value or fee and skip verification.
+ * Bounded: once full, the oldest entries are dropped first.
+ */
+public class SignatureCache {
+
+    private final int capacity;
+    private final Map<String, byte[]> verified = new ConcurrentHashMap<>();
+    private final Queue<String> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    public SignatureCache() {
+        this(NetworkConfig.getInstance().getSignatureCacheSize());
+    }
+
+    public SignatureCache(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /**
+     * @return true if this exact transaction signature was verified before
+     */
+    public boolean contains(Transaction tx) {
+        if (tx.signature == null || tx.sender == null || !hasValidId(tx)) {
+            return false;
+        }
+        byte[] digest = verified.get(tx.transactionId);
+        return digest != null && Arrays.equals(digest, digestOf(tx));
+    }
+
+    /**
+     * Records a transaction whose signature has just been verified.
+     */
+    public void add(Transaction tx) {
+        if (tx.signature == null || tx.sender == null || !hasValidId(tx)) {
+            return;
+        }
+        if (verified.put(tx.transactionId, digestOf(tx)) != null) {
+            return; // Already tracked
+        }
+        insertionOrder.add(tx.transactionId);
+        if (size.incrementAndGet() > capacity) {
+            String oldest = insertionOrder.poll();
+            if (oldest != null) {
+                verified.remove(oldest);
+                size.decrementAndGet();
+            }
+        }
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public void clear() {
+        verified.clear();
+        insertionOrder.clear();
+        size.set(0);
+    }
+
+    private static boolean hasValidId(Transaction tx) {
+        return tx.transactionId != null && tx.transactionId.equals(tx.calculateHash());
+    }
+
+    private static byte[] digestOf(Transaction tx) {
+        return HashUtil.sha256(tx.signature, tx.sender.getEncoded());
+    }
+}
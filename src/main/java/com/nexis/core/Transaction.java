@@ -1,11 +1,14 @@
 package com.nexis.core;
 
-import com.nexis.crypto.HashUtil;
+import com.nexis.crypto.HashBuffer;
 import com.nexis.crypto.KeyPairUtil;
 import com.nexis.crypto.SignatureUtil;
+import com.nexis.utils.JsonUtil;
 
+import java.nio.charset.StandardCharsets;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.util.Objects;
 
 public class Transaction {
 
@@ -19,6 +22,23 @@ public class Transaction {
     public long timeStamp;
     public byte[] signature; // Signature to prevent tampering
 
+    // Memoized wire size (0 = not computed yet; Gson skips initializers) and
+    // what it was computed from: the memoized hash covers the hashed fields
+    private transient int serializedSize;
+    private transient String sizedHash;
+    private transient String sizedId;
+    private transient PublicKey sizedSender;
+    private transient PublicKey sizedRecipient;
+    private transient byte[] sizedSignature;
+
+    // Memoized calculateHash() result and the field values it was computed from
+    private transient String cachedHash;
+    private transient String hashedSender;
+    private transient String hashedRecipient;
+    private transient double hashedValue;
+    private transient double hashedFee;
+    private transient long hashedTimeStamp;
+
     // Constructor with PublicKeys
     public Transaction(PublicKey from, PublicKey to, double value, double fee) {
         this.sender = from;
@@ -43,15 +63,47 @@ public class Transaction {
         this.transactionId = calculateHash();
     }
 
-    // Calculate the transaction hash (ID)
+    // Calculate the transaction hash (ID). Memoized until a hashed field changes.
     public String calculateHash() {
-        // Hash: SenderAddr + RecipientAddr + Value + Fee + Timestamp
-        return HashUtil.applySha256(
-                (senderAddress != null ? senderAddress : "") +
-                        (recipientAddress != null ? recipientAddress : "") +
-                        Double.toString(value) +
-                        Double.toString(fee) +
-                        Long.toString(timeStamp));
+        if (cachedHash == null || !Objects.equals(hashedSender, senderAddress)
+                || !Objects.equals(hashedRecipient, recipientAddress) || hashedValue != value
+                || hashedFee != fee || hashedTimeStamp != timeStamp) {
+            hashedSender = senderAddress;
+            hashedRecipient = recipientAddress;
+            hashedValue = value;
+            hashedFee = fee;
+            hashedTimeStamp = timeStamp;
+            // Hash: SenderAddr + RecipientAddr + Value + Fee + Timestamp
+            cachedHash = HashBuffer.get()
+                    .putString(senderAddress != null ? senderAddress : "")
+                    .putString(recipientAddress != null ? recipientAddress : "")
+                    .putDouble(value)
+                    .putDouble(fee)
+                    .putLong(timeStamp)
+                    .sha256Hex();
+        }
+        return cachedHash;
+    }
+
+    // Size in bytes of the transaction as relayed between peers (JSON).
+    // Memoized until a serialized field changes.
+    public int getSerializedSize() {
+        String hash = calculateHash();
+        if (serializedSize <= 0 || hash != sizedHash || !Objects.equals(sizedId, transactionId)
+                || sizedSender != sender || sizedRecipient != recipient || sizedSignature != signature) {
+            serializedSize = JsonUtil.getGson().toJson(this).getBytes(StandardCharsets.UTF_8).length;
+            sizedHash = hash;
+            sizedId = transactionId;
+            sizedSender = sender;
+            sizedRecipient = recipient;
+            sizedSignature = signature;
+        }
+        return serializedSize;
+    }
+
+    // Fee paid per serialized byte, used to prioritise the mempool
+    public double getFeeRate() {
+        return fee / getSerializedSize();
     }
 
     // Sign the transaction with the private key
@@ -59,13 +111,7 @@ public class Transaction {
         if (sender == null)
             return; // Coinbase transactions are not signed by a sender
 
-        String data = senderAddress +
-                recipientAddress +
-                Double.toString(value) +
-                Double.toString(fee) +
-                Long.toString(timeStamp);
-
-        this.signature = SignatureUtil.applyECDSASig(privateKey, data);
+        this.signature = SignatureUtil.applyECDSASig(privateKey, getSignatureData());
     }
 
     // Verify the transaction signature
@@ -73,12 +119,15 @@ public class Transaction {
         if (sender == null)
             return true; // Coinbase transactions are valid without signature
 
-        String data = senderAddress +
+        return SignatureUtil.verifyECDSASig(sender, getSignatureData(), signature);
+    }
+
+    // The string covered by the sender's signature
+    public String getSignatureData() {
+        return senderAddress +
                 recipientAddress +
                 Double.toString(value) +
                 Double.toString(fee) +
                 Long.toString(timeStamp);
-
-        return SignatureUtil.verifyECDSASig(sender, data, signature);
     }
 }
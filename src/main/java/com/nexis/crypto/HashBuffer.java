@@ -0,0 +1,196 @@
+package com.nexis.crypto;
+
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * Reusable per-thread buffer for building hash inputs without intermediate
+ * Strings.
+ *
+ * Fields are written straight into a growable byte array (integers as decimal
+ * digits, so the bytes match the legacy string concatenation) and the result is
+ * hashed with the thread's SHA-256 digest. Fixed-width binary layouts use the
+ * {@code putRaw*} methods instead. Obtain it with {@link #get()} and
+ * finish with {@link #sha256Hex()} or {@link #sha256(byte[])} before calling
+ * {@code get()} again on the same thread.
+ */
+public final class HashBuffer {
+
+    private static final ThreadLocal<HashBuffer> LOCAL = ThreadLocal.withInitial(HashBuffer::new);
+    private static final byte[] NULL_BYTES = "null".getBytes(StandardCharsets.US_ASCII);
+
+    private byte[] buffer = new byte[256];
+    private int length;
+    private final byte[] digits = new byte[20];
+    private final byte[] hash = new byte[HashUtil.SHA256_LENGTH];
+
+    private HashBuffer() {
+    }
+
+    /**
+     * @return This thread's buffer, emptied
+     */
+    public static HashBuffer get() {
+        HashBuffer buf = LOCAL.get();
+        buf.length = 0;
+        return buf;
+    }
+
+    /**
+     * Appends a string as UTF-8; null is written as "null", like string
+     * concatenation does.
+     */
+    public HashBuffer putString(String s) {
+        if (s == null) {
+            return putBytes(NULL_BYTES);
+        }
+        int n = s.length();
+        for (int i = 0; i < n; i++) {
+            if (s.charAt(i) >= 0x80) {
+                return putBytes(s.getBytes(StandardCharsets.UTF_8)); // Rare non-ASCII input
+            }
+        }
+        // ASCII only: each char is one byte
+        ensureCapacity(n);
+        for (int i = 0; i < n; i++) {
+            buffer[length + i] = (byte) s.charAt(i);
+        }
+        length += n;
+        return this;
+    }
+
+    /**
+     * Appends the decimal representation, as Integer.toString would.
+     */
+    public HashBuffer putInt(int value) {
+        return putLong(value);
+    }
+
+    /**
+     * Appends the decimal representation, as Long.toString would.
+     */
+    public HashBuffer putLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            return putString(Long.toString(value));
+        }
+        ensureCapacity(20);
+        if (value < 0) {
+            buffer[length++] = '-';
+            value = -value;
+        }
+        int n = 0;
+        do {
+            digits[n++] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value != 0);
+        while (n > 0) {
+            buffer[length++] = digits[--n];
+        }
+        return this;
+    }
+
+    /**
+     * Appends the representation Double.toString would produce. This still
+     * formats through the JDK; cache the result where the value is stable.
+     */
+    public HashBuffer putDouble(double value) {
+        return putString(Double.toString(value));
+    }
+
+    /**
+     * Appends 4 bytes, big-endian (binary layouts).
+     */
+    public HashBuffer putRawInt(int value) {
+        ensureCapacity(4);
+        buffer[length++] = (byte) (value >>> 24);
+        buffer[length++] = (byte) (value >>> 16);
+        buffer[length++] = (byte) (value >>> 8);
+        buffer[length++] = (byte) value;
+        return this;
+    }
+
+    /**
+     * Appends 8 bytes, big-endian (binary layouts).
+     */
+    public HashBuffer putRawLong(long value) {
+        putRawInt((int) (value >>> 32));
+        return putRawInt((int) value);
+    }
+
+    /**
+     * Appends the IEEE 754 bits of the value, big-endian (binary layouts).
+     */
+    public HashBuffer putRawDouble(double value) {
+        return putRawLong(Double.doubleToLongBits(value));
+    }
+
+    /**
+     * Appends a hex SHA-256 hash as its 32 raw bytes; anything that is not a
+     * 64-character hex string (e.g. a missing hash) is written as 32 zero bytes.
+     */
+    public HashBuffer putRawHash(String hex) {
+        ensureCapacity(HashUtil.SHA256_LENGTH);
+        if (HashUtil.isSha256Hex(hex)) {
+            HashUtil.decodeHex(hex, buffer, length);
+        } else {
+            Arrays.fill(buffer, length, length + HashUtil.SHA256_LENGTH, (byte) 0);
+        }
+        length += HashUtil.SHA256_LENGTH;
+        return this;
+    }
+
+    public HashBuffer putBytes(byte[] bytes) {
+        return putBytes(bytes, 0, bytes.length);
+    }
+
+    public HashBuffer putBytes(byte[] bytes, int offset, int len) {
+        ensureCapacity(len);
+        System.arraycopy(bytes, offset, buffer, length, len);
+        length += len;
+        return this;
+    }
+
+    /**
+     * Hashes the buffered bytes into {@code out} (at least 32 bytes).
+     *
+     * @return out
+     */
+    public byte[] sha256(byte[] out) {
+        MessageDigest digest = HashUtil.sha256Digest();
+        digest.update(buffer, 0, length);
+        try {
+            digest.digest(out, 0, HashUtil.SHA256_LENGTH);
+        } catch (DigestException e) {
+            throw new RuntimeException("Error computing SHA-256", e);
+        }
+        return out;
+    }
+
+    /**
+     * Hashes the buffered bytes.
+     *
+     * @return The SHA-256 hash as a lowercase hex string
+     */
+    public String sha256Hex() {
+        return HashUtil.bytesToHex(sha256(hash));
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return A copy of the buffered bytes
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, length);
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+}
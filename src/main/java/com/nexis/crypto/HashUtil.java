@@ -3,47 +3,122 @@ package com.nexis.crypto;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 
 public class HashUtil {
 
+    public static final int SHA256_LENGTH = 32;
+
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEX_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(HEX_VALUES, (byte) -1);
+        for (int i = 0; i < 16; i++) {
+            HEX_VALUES["0123456789abcdef".charAt(i)] = (byte) i;
+            HEX_VALUES["0123456789ABCDEF".charAt(i)] = (byte) i;
+        }
+    }
+
+    // MessageDigest.getInstance is costly; each thread keeps its own instance
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 algorithm not found", e);
+        }
+    });
+
+    // Scratch space for hex encoding of digests
+    private static final ThreadLocal<byte[]> HEX_SCRATCH = ThreadLocal.withInitial(() -> new byte[128]);
+
     /**
      * Applies SHA-256 to a string and returns the result.
-     * 
+     *
      * @param input The string to hash
      * @return The SHA-256 hash as a hex string
      */
     public static String applySha256(String input) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(input.getBytes(StandardCharsets.UTF_8));
-            return bytesToHex(hash);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("SHA-256 algorithm not found", e);
+        return HashBuffer.get().putString(input).sha256Hex();
+    }
+
+    /**
+     * Applies SHA-256 to the concatenation of the given byte arrays.
+     *
+     * @return The raw 32-byte digest
+     */
+    public static byte[] sha256(byte[]... inputs) {
+        MessageDigest digest = sha256Digest();
+        for (byte[] input : inputs) {
+            digest.update(input);
         }
+        return digest.digest();
+    }
+
+    /**
+     * The calling thread's SHA-256 digest, reset and ready for input. Do not
+     * share it with other threads.
+     */
+    public static MessageDigest sha256Digest() {
+        MessageDigest digest = SHA256.get();
+        digest.reset();
+        return digest;
     }
 
     /**
      * Helper to convert byte array to hex string
      */
     public static String bytesToHex(byte[] hash) {
-        StringBuilder hexString = new StringBuilder();
-        for (byte b : hash) {
-            String hex = Integer.toHexString(0xff & b);
-            if (hex.length() == 1) {
-                hexString.append('0');
-            }
-            hexString.append(hex);
+        int chars = hash.length * 2;
+        byte[] out = chars <= 128 ? HEX_SCRATCH.get() : new byte[chars];
+        for (int i = 0, j = 0; i < hash.length; i++) {
+            out[j++] = HEX_DIGITS[(hash[i] >> 4) & 0x0f];
+            out[j++] = HEX_DIGITS[hash[i] & 0x0f];
         }
-        return hexString.toString();
+        return new String(out, 0, chars, StandardCharsets.ISO_8859_1);
     }
 
     public static byte[] hexToBytes(String hexString) {
-        int len = hexString.length();
-        byte[] data = new byte[len / 2];
-        for (int i = 0; i < len; i += 2) {
-            data[i / 2] = (byte) ((Character.digit(hexString.charAt(i), 16) << 4)
-                    + Character.digit(hexString.charAt(i + 1), 16));
-        }
+        byte[] data = new byte[hexString.length() / 2];
+        decodeHex(hexString, data, 0);
         return data;
     }
+
+    /**
+     * Decodes a hex string into {@code out} starting at {@code offset}.
+     *
+     * @return Number of bytes written
+     */
+    public static int decodeHex(String hexString, byte[] out, int offset) {
+        int bytes = hexString.length() / 2;
+        for (int i = 0; i < bytes; i++) {
+            out[offset + i] = (byte) ((hexValue(hexString.charAt(2 * i)) << 4)
+                    | hexValue(hexString.charAt(2 * i + 1)));
+        }
+        return bytes;
+    }
+
+    /**
+     * @return true if the string is a 64-character hex SHA-256 hash
+     */
+    public static boolean isSha256Hex(String s) {
+        if (s == null || s.length() != SHA256_LENGTH * 2) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 128 || HEX_VALUES[c] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hexValue(char c) {
+        int value = c < 128 ? HEX_VALUES[c] : -1;
+        if (value < 0) {
+            throw new RuntimeException("Invalid hex character: " + c);
+        }
+        return value;
+    }
 }
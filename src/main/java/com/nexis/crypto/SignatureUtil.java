@@ -1,11 +1,21 @@
 package com.nexis.crypto;
 
+import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.Signature;
 
 public class SignatureUtil {
 
+    // Signature.getInstance is costly; each thread keeps its own signer
+    private static final ThreadLocal<Signature> SIGNER = ThreadLocal.withInitial(() -> {
+        try {
+            return Signature.getInstance("SHA256withECDSA");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA256withECDSA algorithm not found", e);
+        }
+    });
+
     /**
      * Signs data using the Private Key.
      * 
@@ -15,7 +25,7 @@ public class SignatureUtil {
      */
     public static byte[] applyECDSASig(PrivateKey privateKey, String data) {
         try {
-            Signature dsa = Signature.getInstance("SHA256withECDSA");
+            Signature dsa = SIGNER.get();
             dsa.initSign(privateKey);
             dsa.update(data.getBytes());
             return dsa.sign();
@@ -33,13 +43,6 @@ public class SignatureUtil {
      * @return true if valid, false otherwise
      */
     public static boolean verifyECDSASig(PublicKey publicKey, String data, byte[] signature) {
-        try {
-            Signature dsa = Signature.getInstance("SHA256withECDSA");
-            dsa.initVerify(publicKey);
-            dsa.update(data.getBytes());
-            return dsa.verify(signature);
-        } catch (Exception e) {
-            throw new RuntimeException("Error verifying signature", e);
-        }
+        return SignatureVerifier.verify(publicKey, data.getBytes(), signature);
     }
 }
@@ -0,0 +1,141 @@
+package com.nexis.crypto;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ECDSA verification service.
+ *
+ * Each thread reuses its own {@link Signature} instance instead of calling
+ * {@code Signature.getInstance} per check. Batches (e.g. all transactions of an
+ * incoming block) are split into chunks and verified in parallel on a bounded
+ * worker pool; when the queue is full the caller verifies the chunk itself.
+ */
+public class SignatureVerifier {
+
+    private static final String ALGORITHM = "SHA256withECDSA";
+    private static final String THREAD_PREFIX = "sig-verifier-";
+    private static final int CHUNK_SIZE = 64;
+    private static final int QUEUE_CAPACITY = 256;
+
+    private static final SignatureVerifier INSTANCE = new SignatureVerifier(
+            Runtime.getRuntime().availableProcessors());
+
+    private static final ThreadLocal<Signature> VERIFIER = ThreadLocal.withInitial(() -> {
+        try {
+            return Signature.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(ALGORITHM + " algorithm not found", e);
+        }
+    });
+
+    /**
+     * One signature to check. The id is returned in the failure list so callers
+     * can tell which item was rejected.
+     */
+    public static class Job {
+        public final String id;
+        public final PublicKey publicKey;
+        public final byte[] data;
+        public final byte[] signature;
+
+        public Job(String id, PublicKey publicKey, byte[] data, byte[] signature) {
+            this.id = id;
+            this.publicKey = publicKey;
+            this.data = data;
+            this.signature = signature;
+        }
+    }
+
+    private final ExecutorService workers;
+
+    public SignatureVerifier(int threads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+                r -> {
+                    Thread t = new Thread(r, THREAD_PREFIX + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    public static SignatureVerifier getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Verifies one signature on the calling thread, reusing its Signature
+     * instance.
+     *
+     * @throws RuntimeException if the key or signature is malformed
+     */
+    public static boolean verify(PublicKey publicKey, byte[] data, byte[] signature) {
+        try {
+            Signature dsa = VERIFIER.get();
+            dsa.initVerify(publicKey);
+            dsa.update(data);
+            return dsa.verify(signature);
+        } catch (Exception e) {
+            throw new RuntimeException("Error verifying signature", e);
+        }
+    }
+
+    /**
+     * Verifies a batch in parallel.
+     *
+     * @return The jobs whose signature is invalid or malformed (empty if all pass)
+     */
+    public List<Job> verifyBatch(List<Job> jobs) {
+        // Small batches, and batches submitted from a worker, are not worth a hand-off
+        if (jobs.size() <= CHUNK_SIZE || Thread.currentThread().getName().startsWith(THREAD_PREFIX)) {
+            return verifyChunk(jobs);
+        }
+
+        List<Future<List<Job>>> pending = new ArrayList<>();
+        for (int from = 0; from < jobs.size(); from += CHUNK_SIZE) {
+            List<Job> chunk = jobs.subList(from, Math.min(from + CHUNK_SIZE, jobs.size()));
+            pending.add(workers.submit(() -> verifyChunk(chunk)));
+        }
+
+        List<Job> failures = new ArrayList<>();
+        for (Future<List<Job>> future : pending) {
+            try {
+                failures.addAll(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while verifying signatures", e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Error verifying signatures", e.getCause());
+            }
+        }
+        return failures;
+    }
+
+    private static List<Job> verifyChunk(List<Job> chunk) {
+        List<Job> failures = new ArrayList<>();
+        for (Job job : chunk) {
+            boolean valid;
+            try {
+                valid = verify(job.publicKey, job.data, job.signature);
+            } catch (RuntimeException e) {
+                valid = false;
+            }
+            if (!valid) {
+                failures.add(job);
+            }
+        }
+        return failures;
+    }
+}
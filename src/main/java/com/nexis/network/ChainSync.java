@@ -0,0 +1,486 @@
+package com.nexis.network;
+
+import com.google.gson.Gson;
+import com.nexis.consensus.ProofOfWork;
+import com.nexis.core.Block;
+import com.nexis.core.BlockHeader;
+import com.nexis.core.Blockchain;
+import com.nexis.crypto.HashUtil;
+import com.nexis.storage.BlockAccess;
+import com.nexis.storage.BlockStore;
+import com.nexis.utils.JsonUtil;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headers-first chain synchronization.
+ *
+ * 1. GET_HEADERS with our block locator; the peer answers with up to
+ * {@link #MAX_HEADERS} HEADERS after the fork point.
+ * 2. The header batch is validated on its own (links, heights, header hashes and
+ * PoW) before any body is fetched.
+ * 3. Bodies are requested with GET_BLOCKS by hash range in small chunks spread
+ * over all connected peers, at most {@link #DOWNLOAD_WINDOW} blocks ahead of
+ * the next block to connect. Chunks that time out or come back empty are
+ * retried from the peer that sent the headers.
+ * 4. Blocks are validated and connected in height order; when the batch is done
+ * the next header batch is requested.
+ *
+ * Only one header batch and one download window are held at a time, so memory
+ * stays bounded whatever the chain length. A competing branch has to be held
+ * until it is longer than ours, so forks deeper than {@link #MAX_FORK_BLOCKS}
+ * are not followed.
+ */
+public class ChainSync {
+
+    public static final int MAX_HEADERS = 2000;
+    public static final int MAX_BLOCKS_PER_MESSAGE = 64;
+    public static final long MAX_BLOCK_BYTES_PER_MESSAGE = 8L * 1024 * 1024;
+    private static final int CHUNK_SIZE = 16;
+    private static final int DOWNLOAD_WINDOW = 256;
+    public static final int MAX_FORK_BLOCKS = MAX_HEADERS;
+    private static final long REQUEST_TIMEOUT_MILLIS = 10_000;
+
+    /**
+     * Header as relayed in HEADERS. Binary headers (version 1) are sent as their
+     * fixed 104 bytes so the receiver can check the hash and proof; legacy
+     * blocks only carry their links and hash.
+     */
+    public static class HeaderEntry {
+        int height;
+        String hash;
+        String previousHash;
+        boolean proofOfStake;
+        String header; // Base64 of the BlockHeader bytes, version 1 only
+
+        static HeaderEntry of(BlockStore.StoredHeader stored) {
+            HeaderEntry entry = new HeaderEntry();
+            entry.height = stored.height;
+            entry.hash = stored.hash;
+            entry.previousHash = stored.previousHash;
+            entry.proofOfStake = stored.proofOfStake;
+            if (stored.header != null) {
+                entry.header = Base64.getEncoder().encodeToString(stored.header);
+            }
+            return entry;
+        }
+    }
+
+    static class GetHeaders {
+        List<String> locator;
+        int max;
+    }
+
+    static class GetBlocks {
+        String fromHash;
+        String toHash;
+    }
+
+    // One GET_BLOCKS request in flight
+    private static class Chunk {
+        final int from; // Offsets into the header batch
+        final int to;
+        MessageHandler peer;
+        long requestedAt;
+
+        Chunk(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    private final Node node;
+    private final Gson gson = JsonUtil.getGson();
+    private final ScheduledExecutorService timer;
+
+    // State of the sync in progress (guarded by this)
+    private MessageHandler source;
+    private List<HeaderEntry> batch = new ArrayList<>();
+    private final Map<String, Integer> batchOffsets = new HashMap<>();
+    private final Map<Integer, Block> downloaded = new HashMap<>();
+    private final List<Chunk> inFlight = new ArrayList<>();
+    private int nextToRequest;
+    private int nextToConnect;
+    private int forkHeight = -1;
+    private final List<Block> forkBlocks = new ArrayList<>(); // Competing branch not yet longer than ours
+    private int peerCursor;
+    private long startedAt;
+    private int blocksSynced;
+
+    public ChainSync(Node node) {
+        this.node = node;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "chain-sync-timer");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.scheduleWithFixedDelay(this::retryStalled, REQUEST_TIMEOUT_MILLIS, REQUEST_TIMEOUT_MILLIS / 2,
+                TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized boolean isSyncing() {
+        return source != null;
+    }
+
+    /**
+     * Starts syncing from a peer that announced a longer chain. Ignored if a
+     * sync is already running.
+     */
+    public synchronized void start(MessageHandler peer) {
+        if (source != null) {
+            return;
+        }
+        source = peer;
+        startedAt = System.currentTimeMillis();
+        blocksSynced = 0;
+        forkHeight = -1;
+        forkBlocks.clear();
+        System.out.println("Starting headers-first sync");
+        requestHeaders(node.getBlockchain().getBlockLocator());
+    }
+
+    // --- Serving peers ---
+
+    public void handleGetHeaders(MessageHandler peer, String data) {
+        GetHeaders request = gson.fromJson(data, GetHeaders.class);
+        Blockchain blockchain = node.getBlockchain();
+        List<HeaderEntry> headers = new ArrayList<>();
+
+        int fork = request == null || request.locator == null ? -1 : blockchain.findForkPoint(request.locator);
+        if (fork >= 0) {
+            int max = Math.min(MAX_HEADERS, request.max > 0 ? request.max : MAX_HEADERS);
+            BlockAccess chain = blockchain.chain;
+            int end = Math.min(chain.size() - 1, fork + max);
+            for (int height = fork + 1; height <= end; height++) {
+                headers.add(HeaderEntry.of(chain.getHeader(height))); // Kept for pruned blocks too
+            }
+        }
+        peer.sendMessage(gson.toJson(new MessageHandler.Message("HEADERS", gson.toJson(headers))));
+    }
+
+    public void handleGetBlocks(MessageHandler peer, String data) {
+        GetBlocks request = gson.fromJson(data, GetBlocks.class);
+        Blockchain blockchain = node.getBlockchain();
+        List<String> blocks = new ArrayList<>();
+
+        int from = request == null ? -1 : blockchain.getHeight(request.fromHash);
+        int to = request == null ? -1 : blockchain.getHeight(request.toHash);
+        // A pruned node cannot serve the range; the requester tries another peer
+        if (from >= blockchain.chain.getFirstFullHeight() && to >= from) {
+            long bytes = 0;
+            for (int height = from; height <= to && blocks.size() < MAX_BLOCKS_PER_MESSAGE; height++) {
+                String block = blockchain.getBlockJson(height); // Stored bytes, not re-serialized
+                bytes += block.length();
+                if (!blocks.isEmpty() && bytes > MAX_BLOCK_BYTES_PER_MESSAGE) {
+                    break; // The requester asks again for the rest
+                }
+                blocks.add(block);
+            }
+        }
+        peer.sendMessage(gson.toJson(new MessageHandler.Message("BLOCKS", JsonUtil.toJsonArray(blocks))));
+    }
+
+    // --- Syncing ---
+
+    public synchronized void handleHeaders(MessageHandler peer, List<HeaderEntry> headers) {
+        if (peer != source) {
+            return; // Unsolicited
+        }
+        if (headers == null || headers.isEmpty()) {
+            finish("peer has no further headers");
+            return;
+        }
+        try {
+            acceptHeaders(headers);
+        } catch (RuntimeException e) {
+            abort("malformed headers (" + e.getMessage() + ")"); // Missing fields, bad Base64, wrong header size
+        }
+    }
+
+    private void acceptHeaders(List<HeaderEntry> headers) {
+        Blockchain blockchain = node.getBlockchain();
+        HeaderEntry first = headers.get(0);
+        HeaderEntry previous = batch.isEmpty() ? null : batch.get(batch.size() - 1);
+        boolean continuesBatch = previous != null && previous.hash.equals(first.previousHash);
+        int parentHeight = blockchain.getHeight(first.previousHash);
+        if (!continuesBatch && parentHeight < 0) {
+            abort("headers do not connect to our chain");
+            return;
+        }
+        if (!continuesBatch && parentHeight != first.height - 1) {
+            abort("header height does not match its parent");
+            return;
+        }
+        if (!isValidHeaderChain(headers)) {
+            abort("invalid header chain");
+            return;
+        }
+
+        // Headers that fork below our tip are collected until the branch is longer
+        if (!continuesBatch && parentHeight < blockchain.chain.size() - 1) {
+            if (parentHeight < blockchain.chain.getFirstFullHeight()) {
+                abort("headers fork below our pruned history");
+                return;
+            }
+            if (blockchain.chain.size() - 1 - parentHeight >= MAX_FORK_BLOCKS) {
+                abort("competing branch forks more than " + MAX_FORK_BLOCKS + " blocks below our tip");
+                return;
+            }
+            forkHeight = parentHeight;
+            forkBlocks.clear();
+        }
+
+        batch = new ArrayList<>(headers);
+        batchOffsets.clear();
+        for (int i = 0; i < batch.size(); i++) {
+            batchOffsets.put(batch.get(i).hash, i);
+        }
+        downloaded.clear();
+        inFlight.clear();
+        nextToRequest = 0;
+        nextToConnect = 0;
+        System.out.println("Sync: received " + headers.size() + " headers up to height "
+                + headers.get(headers.size() - 1).height);
+        requestBodies();
+    }
+
+    public synchronized void handleBlocks(MessageHandler peer, List<Block> blocks) {
+        if (source == null || blocks == null) {
+            return;
+        }
+        for (Block block : blocks) {
+            Integer offset = block == null ? null : batchOffsets.get(block.hash);
+            if (offset != null && offset >= nextToConnect && offset < nextToConnect + DOWNLOAD_WINDOW) {
+                downloaded.put(offset, block);
+            }
+        }
+
+        // A peer answers its requests in order: this response is for its oldest chunk
+        Chunk served = null;
+        for (Chunk chunk : inFlight) {
+            if (chunk.peer == peer) {
+                served = chunk;
+                break;
+            }
+        }
+        if (served != null) {
+            inFlight.remove(served);
+            int missing = served.from;
+            while (missing <= served.to && (missing < nextToConnect || downloaded.containsKey(missing))) {
+                missing++;
+            }
+            if (missing <= served.to) {
+                if (peer == source && missing == served.from) {
+                    abort("sync peer did not return requested blocks");
+                    return;
+                }
+                // Partial or empty answer: ask the sync source for the rest
+                sendChunk(new Chunk(missing, served.to), source);
+            }
+        }
+
+        if (!connectDownloaded()) {
+            return;
+        }
+        if (nextToConnect == batch.size()) {
+            if (batch.size() < MAX_HEADERS) {
+                finish("caught up");
+            } else {
+                List<String> locator = new ArrayList<>();
+                locator.add(batch.get(batch.size() - 1).hash);
+                locator.addAll(node.getBlockchain().getBlockLocator());
+                requestHeaders(locator);
+            }
+        } else {
+            requestBodies();
+        }
+    }
+
+    public synchronized void peerDisconnected(MessageHandler peer) {
+        if (peer == source) {
+            abort("sync peer disconnected");
+            return;
+        }
+        for (Chunk chunk : inFlight) {
+            if (chunk.peer == peer) {
+                chunk.requestedAt = 0; // Retried by the timer
+            }
+        }
+    }
+
+    // Links, heights, header hashes and proof of work of a header batch
+    private boolean isValidHeaderChain(List<HeaderEntry> headers) {
+        for (int i = 0; i < headers.size(); i++) {
+            HeaderEntry entry = headers.get(i);
+            if (i > 0 && (!entry.previousHash.equals(headers.get(i - 1).hash)
+                    || entry.height != headers.get(i - 1).height + 1)) {
+                return false;
+            }
+            if (!HashUtil.isSha256Hex(entry.hash)) {
+                return false;
+            }
+            if (entry.header != null) {
+                BlockHeader header = BlockHeader.fromBytes(Base64.getDecoder().decode(entry.header));
+                if (header.height != entry.height || !header.previousHash.equals(entry.previousHash)
+                        || !header.calculateHash().equals(entry.hash)) {
+                    return false;
+                }
+                if (!entry.proofOfStake && (header.difficultyBits != Blockchain.DIFFICULTY * 4
+                        || !ProofOfWork.hasLeadingZeroBits(HashUtil.hexToBytes(entry.hash), header.difficultyBits))) {
+                    return false;
+                }
+            } else if (!entry.proofOfStake && !ProofOfWork.isHashValid(entry.hash, Blockchain.DIFFICULTY)) {
+                return false;
+            }
+            // PoS proofs need the coinbase and are checked with the body
+        }
+        return true;
+    }
+
+    // Connects downloaded blocks in height order; false if the sync was aborted
+    private boolean connectDownloaded() {
+        Blockchain blockchain = node.getBlockchain();
+        int connected = 0;
+        while (downloaded.containsKey(nextToConnect)) {
+            Block block = downloaded.remove(nextToConnect);
+            HeaderEntry expected = batch.get(nextToConnect);
+            if (!block.hash.equals(expected.hash)) {
+                abort("block body does not match its header");
+                return false;
+            }
+
+            if (forkHeight >= 0) {
+                Block parent = forkBlocks.isEmpty() ? blockchain.chain.get(forkHeight)
+                        : forkBlocks.get(forkBlocks.size() - 1);
+                // Headers were already checked; the full branch is validated once by reorganize
+                if (!blockchain.isValidLink(block, parent)) {
+                    abort("block " + block.index + " does not extend the competing branch");
+                    return false;
+                }
+                if (forkBlocks.size() >= MAX_FORK_BLOCKS) {
+                    abort("competing branch longer than " + MAX_FORK_BLOCKS + " blocks is still not ahead of ours");
+                    return false;
+                }
+                forkBlocks.add(block);
+                if (forkHeight + forkBlocks.size() > blockchain.chain.size() - 1 && !switchToFork()) {
+                    abort("competing branch rejected");
+                    return false;
+                }
+            } else {
+                if (!blockchain.isValidBlock(block, blockchain.getLatestBlock())
+                        || !blockchain.tryAppendBlock(block)) {
+                    abort("block " + block.index + " could not be connected");
+                    return false;
+                }
+            }
+            nextToConnect++;
+            connected++;
+        }
+        if (connected > 0) {
+            blocksSynced += connected;
+            if (forkHeight < 0) {
+                blockchain.chainStore.save(blockchain);
+            }
+        }
+        return true;
+    }
+
+    // The downloaded branch is now longer than ours: adopt it
+    private boolean switchToFork() {
+        System.out.println("Sync: switching to a longer branch forking at height " + forkHeight);
+        if (!node.getBlockchain().reorganize(forkHeight, new ArrayList<>(forkBlocks))) {
+            return false;
+        }
+        forkHeight = -1;
+        forkBlocks.clear();
+        return true;
+    }
+
+    private void requestHeaders(List<String> locator) {
+        GetHeaders request = new GetHeaders();
+        request.locator = locator;
+        request.max = MAX_HEADERS;
+        source.sendMessage(gson.toJson(new MessageHandler.Message("GET_HEADERS", gson.toJson(request))));
+    }
+
+    // Fills the download window with chunks spread over the connected peers
+    private void requestBodies() {
+        List<MessageHandler> peers = node.getPeerManager().getPeers();
+        if (peers.isEmpty()) {
+            peers = List.of(source);
+        }
+        int limit = Math.min(batch.size(), nextToConnect + DOWNLOAD_WINDOW);
+        while (nextToRequest < limit) {
+            int to = Math.min(limit, nextToRequest + CHUNK_SIZE) - 1;
+            MessageHandler peer = peers.get(Math.floorMod(peerCursor++, peers.size()));
+            sendChunk(new Chunk(nextToRequest, to), peer);
+            nextToRequest = to + 1;
+        }
+    }
+
+    private void sendChunk(Chunk chunk, MessageHandler peer) {
+        chunk.peer = peer;
+        chunk.requestedAt = System.currentTimeMillis();
+        inFlight.add(chunk);
+        GetBlocks request = new GetBlocks();
+        request.fromHash = batch.get(chunk.from).hash;
+        request.toHash = batch.get(chunk.to).hash;
+        peer.sendMessage(gson.toJson(new MessageHandler.Message("GET_BLOCKS", gson.toJson(request))));
+    }
+
+    // Re-sends chunks whose peer did not answer in time to the sync source
+    private synchronized void retryStalled() {
+        if (source == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        List<Chunk> stalled = new ArrayList<>();
+        for (Chunk chunk : inFlight) {
+            if (now - chunk.requestedAt > REQUEST_TIMEOUT_MILLIS) {
+                stalled.add(chunk);
+            }
+        }
+        inFlight.removeAll(stalled);
+        for (Chunk chunk : stalled) {
+            if (chunk.peer == source) {
+                abort("sync peer stopped responding");
+                return;
+            }
+            sendChunk(new Chunk(chunk.from, chunk.to), source);
+        }
+    }
+
+    private void finish(String reason) {
+        Blockchain blockchain = node.getBlockchain();
+        if (!forkBlocks.isEmpty()) {
+            System.out.println("Sync: competing branch is not longer than ours. Ignoring it.");
+        }
+        System.out.println("Sync complete (" + reason + "): " + blocksSynced + " blocks in "
+                + (System.currentTimeMillis() - startedAt) + " ms, height " + (blockchain.chain.size() - 1));
+        reset();
+    }
+
+    private void abort(String reason) {
+        System.err.println("Sync aborted: " + reason);
+        reset();
+    }
+
+    private void reset() {
+        source = null;
+        batch = new ArrayList<>();
+        batchOffsets.clear();
+        downloaded.clear();
+        inFlight.clear();
+        forkHeight = -1;
+        forkBlocks.clear();
+        nextToRequest = 0;
+        nextToConnect = 0;
+    }
+}
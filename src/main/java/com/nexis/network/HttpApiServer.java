@@ -3,6 +3,7 @@ package com.nexis.network;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.nexis.core.Blockchain;
+import com.nexis.utils.JsonUtil;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
@@ -12,11 +13,16 @@ import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class HttpApiServer {
 
+    private static final int DEFAULT_CHAIN_PAGE = 50;
+    private static final int MAX_CHAIN_PAGE = 500;
+
     private final Node node;
     private final int port;
     private final Gson gson;
@@ -33,8 +39,10 @@ public class HttpApiServer {
 
             // API Endpoints
             server.createContext("/api/chain", new ChainHandler());
+            server.createContext("/api/block/", new BlockHandler());
             server.createContext("/api/mempool", new MempoolHandler());
             server.createContext("/api/stats", new StatsHandler());
+            server.createContext("/api/tx/", new TransactionHandler());
             // Phase 2: Revenue Endpoints
             server.createContext("/api/revenue", new RevenueHandler());
             server.createContext("/api/costs", new CostsHandler());
@@ -75,13 +83,60 @@ public class HttpApiServer {
         return true;
     }
 
+    // Blocks in height order: ?from=<height>&limit=<n>, by default the latest page
     private class ChainHandler implements HttpHandler {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             if (!checkRateLimit(exchange))
                 return;
-            String response = gson.toJson(node.getBlockchain().chain);
-            sendResponse(exchange, response, "application/json");
+            Blockchain chain = node.getBlockchain();
+            Map<String, String> query = parseQuery(exchange);
+            int tip = chain.getLatestBlock().index;
+            int limit;
+            int from;
+            try {
+                limit = Math.max(1, Math.min(MAX_CHAIN_PAGE,
+                        Integer.parseInt(query.getOrDefault("limit", String.valueOf(DEFAULT_CHAIN_PAGE)))));
+                from = query.containsKey("from") ? Math.max(0, Integer.parseInt(query.get("from")))
+                        : Math.max(0, tip - limit + 1);
+            } catch (NumberFormatException e) {
+                sendResponse(exchange, "{\"error\": \"Invalid from/limit\"}", "application/json", 400);
+                return;
+            }
+
+            // Stored blocks are copied from the mapped segments as they are
+            List<String> blocks = new ArrayList<>();
+            int start = Math.max(from, chain.chain.getFirstFullHeight()); // Pruned blocks are skipped
+            for (int height = start; height <= tip && blocks.size() < limit; height++) {
+                blocks.add(chain.getBlockJson(height));
+            }
+            sendResponse(exchange, JsonUtil.toJsonArray(blocks), "application/json");
+        }
+    }
+
+    // A single block by height or hash: /api/block/<height|hash>
+    private class BlockHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!checkRateLimit(exchange))
+                return;
+            String id = exchange.getRequestURI().getPath().substring("/api/block/".length());
+            Blockchain chain = node.getBlockchain();
+            int height;
+            if (!id.isEmpty() && id.chars().allMatch(Character::isDigit) && id.length() < 10) {
+                height = Integer.parseInt(id);
+            } else {
+                height = chain.getHeight(id);
+            }
+            if (height < 0 || height > chain.getLatestBlock().index) {
+                sendResponse(exchange, "{\"error\": \"Block not found\"}", "application/json", 404);
+                return;
+            }
+            if (height < chain.chain.getFirstFullHeight()) {
+                sendResponse(exchange, "{\"error\": \"Block has been pruned\"}", "application/json", 404);
+                return;
+            }
+            sendResponse(exchange, chain.getBlockJson(height), "application/json");
         }
     }
 
@@ -90,7 +145,7 @@ public class HttpApiServer {
         public void handle(HttpExchange exchange) throws IOException {
             if (!checkRateLimit(exchange))
                 return;
-            String response = gson.toJson(node.getBlockchain().mempool);
+            String response = gson.toJson(node.getBlockchain().mempool.snapshot());
             sendResponse(exchange, response, "application/json");
         }
     }
@@ -104,15 +159,62 @@ public class HttpApiServer {
             Map<String, Object> stats = new HashMap<>();
             stats.put("height", chain.chain.size());
             stats.put("supply", chain.getCurrentSupply());
+            stats.put("treasury", chain.ledger.getTreasuryBalance());
+            stats.put("totalFees", chain.ledger.getTotalFees());
             stats.put("mempoolSize", chain.mempool.size());
             stats.put("peerCount", node.getPeerManager().getPeerCount());
+            stats.put("blocksMined", node.getMiner().getBlocksMined());
+            stats.put("staleBlocksAvoided", node.getMiner().getStaleBlocksAvoided());
+            stats.put("hashrate", com.nexis.consensus.Miner.getInstance().getLastHashrate());
             stats.put("port", node.getPort());
+            if (chain.chain instanceof com.nexis.storage.CachedBlockAccess) {
+                com.nexis.storage.CachedBlockAccess blocks = (com.nexis.storage.CachedBlockAccess) chain.chain;
+                stats.put("blockCacheHits", blocks.getHits());
+                stats.put("blockCacheMisses", blocks.getMisses());
+                stats.put("blockCacheBytes", blocks.getCachedBytes());
+            }
+            stats.put("persistQueued", chain.chainStore.getWriter().getQueued());
+            stats.put("persistBatches", chain.chainStore.getWriter().getBatches());
+            stats.put("firstFullBlock", chain.chain.getFirstFullHeight());
 
             String response = gson.toJson(stats);
             sendResponse(exchange, response, "application/json");
         }
     }
 
+    private class TransactionHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!checkRateLimit(exchange))
+                return;
+            String txId = exchange.getRequestURI().getPath().substring("/api/tx/".length());
+            Blockchain chain = node.getBlockchain();
+            Map<String, Object> result = new HashMap<>();
+
+            com.nexis.storage.TransactionIndex.Location loc = chain.txIndex.find(txId);
+            if (loc != null && loc.height < chain.chain.size() && loc.height >= chain.chain.getFirstFullHeight()) {
+                com.nexis.core.Block block = chain.chain.get(loc.height);
+                result.put("status", "confirmed");
+                result.put("blockHeight", loc.height);
+                result.put("blockHash", block.hash);
+                result.put("position", loc.position);
+                result.put("confirmations", chain.chain.size() - loc.height);
+                result.put("transaction", JsonUtil.getGson().toJsonTree(block.transactions.get(loc.position)));
+            } else {
+                com.nexis.core.Transaction pending = chain.mempool.get(txId);
+                if (pending == null) {
+                    sendResponse(exchange, "{\"error\": \"Transaction not found\"}", "application/json", 404);
+                    return;
+                }
+                result.put("status", "pending");
+                result.put("transaction", JsonUtil.getGson().toJsonTree(pending));
+            }
+
+            String response = gson.toJson(result);
+            sendResponse(exchange, response, "application/json");
+        }
+    }
+
     private class RevenueHandler implements HttpHandler {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
@@ -205,6 +307,20 @@ public class HttpApiServer {
         }
     }
 
+    private static Map<String, String> parseQuery(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String query = exchange.getRequestURI().getQuery();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                int eq = pair.indexOf('=');
+                if (eq > 0) {
+                    params.put(pair.substring(0, eq), pair.substring(eq + 1));
+                }
+            }
+        }
+        return params;
+    }
+
     private String getContentType(String path) {
         if (path.endsWith(".html"))
             return "text/html";
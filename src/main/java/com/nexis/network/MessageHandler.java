@@ -10,6 +10,7 @@ import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.lang.reflect.Type;
 import java.net.Socket;
+import java.util.ArrayList;
 import java.util.List;
 
 public class MessageHandler implements Runnable {
@@ -71,7 +72,7 @@ public class MessageHandler implements Runnable {
                     break;
 
                 case "QUERY_ALL":
-                    sendResponse("RESPONSE_BLOCKCHAIN", gson.toJson(blockchain.chain));
+                    sendResponse("RESPONSE_BLOCKCHAIN", getFullChainJson(blockchain));
                     break;
 
                 case "RESPONSE_BLOCKCHAIN":
@@ -82,6 +83,40 @@ public class MessageHandler implements Runnable {
                     handleTransactionBroadcast(message.data);
                     break;
 
+                case "BROADCAST_TRANSACTIONS":
+                    handleTransactionBatch(message.data);
+                    break;
+
+                case "GET_HEADERS":
+                    node.getChainSync().handleGetHeaders(this, message.data);
+                    break;
+
+                case "HEADERS":
+                    node.getChainSync().handleHeaders(this, gson.fromJson(message.data,
+                            new com.google.gson.reflect.TypeToken<java.util.ArrayList<ChainSync.HeaderEntry>>() {
+                            }.getType()));
+                    break;
+
+                case "GET_BLOCKS":
+                    node.getChainSync().handleGetBlocks(this, message.data);
+                    break;
+
+                case "BLOCKS":
+                    node.getChainSync().handleBlocks(this, gson.fromJson(message.data,
+                            new com.google.gson.reflect.TypeToken<java.util.ArrayList<Block>>() {
+                            }.getType()));
+                    break;
+
+                case "GET_ANCESTORS":
+                    node.getOrphanResolver().handleGetAncestors(this, message.data);
+                    break;
+
+                case "ANCESTORS":
+                    node.getOrphanResolver().handleAncestors(this, gson.fromJson(message.data,
+                            new com.google.gson.reflect.TypeToken<java.util.ArrayList<Block>>() {
+                            }.getType()));
+                    break;
+
                 default:
                     System.out.println("Unknown message type: " + message.type);
             }
@@ -106,6 +141,21 @@ public class MessageHandler implements Runnable {
         }
     }
 
+    private void handleTransactionBatch(String data) {
+        Type listType = new com.google.gson.reflect.TypeToken<java.util.ArrayList<com.nexis.core.Transaction>>() {
+        }.getType();
+        List<com.nexis.core.Transaction> txs = gson.fromJson(data, listType);
+        if (txs == null || txs.isEmpty())
+            return;
+
+        // Signatures are verified in parallel; only accepted transactions are relayed
+        List<com.nexis.core.Transaction> accepted = node.getBlockchain().addTransactions(txs);
+        System.out.println("Received " + txs.size() + " transactions, added " + accepted.size());
+        if (!accepted.isEmpty()) {
+            peerManager.broadcastTransactions(accepted);
+        }
+    }
+
     private void handleBlockchainResponse(String data) {
         Type listType = new com.google.gson.reflect.TypeToken<java.util.ArrayList<Block>>() {
         }.getType();
@@ -121,22 +171,9 @@ public class MessageHandler implements Runnable {
         if (latestBlockReceived.index > latestBlockHeld.index) {
             System.out.println("Received longer chain. Current: " + latestBlockHeld.index + ", Received: "
                     + latestBlockReceived.index);
-            if (latestBlockHeld.hash.equals(latestBlockReceived.previousHash)) {
-                // We are behind by one block - validate and append it
-                if (blockchain.isValidBlock(latestBlockReceived, latestBlockHeld)) {
-                    System.out.println("Appending new block...");
-                    blockchain.chain.add(latestBlockReceived);
-                    blockchain.chainStore.save(blockchain);
-                    // Broadcast to others
-                    peerManager.broadcast(
-                            gson.toJson(new Message("RESPONSE_BLOCKCHAIN", gson.toJson(List.of(latestBlockReceived)))));
-                } else {
-                    System.err.println("Received block is invalid!");
-                }
-            } else if (receivedBlocks.size() == 1) {
-                // We received one block but it doesn't link. Query full chain.
-                System.out.println("Querying full chain...");
-                sendMessage(gson.toJson(new Message("QUERY_ALL", "")));
+            if (receivedBlocks.size() == 1) {
+                // A single announced block: connect it, or pool it and fetch only its missing ancestors
+                node.getOrphanResolver().handleBlock(this, latestBlockReceived);
             } else {
                 // Received full chain, replace if valid
                 System.out.println("Replacing chain...");
@@ -148,25 +185,24 @@ public class MessageHandler implements Runnable {
     }
 
     private void replaceChain(List<Block> newBlocks) {
-        Blockchain blockchain = node.getBlockchain();
-        // 1. Validate Genesis Block (must match our genesis)
-        if (!newBlocks.get(0).hash.equals(blockchain.chain.get(0).hash)) {
-            System.err.println("Received chain has different genesis block. Rejecting.");
-            return;
+        // Only the blocks after the common ancestor are validated and applied
+        if (node.getBlockchain().replaceChain(newBlocks)) {
+            System.out.println("Chain replaced successfully.");
         }
+    }
 
-        // 2. Validate entire chain
-        for (int i = 1; i < newBlocks.size(); i++) {
-            if (!blockchain.isValidBlock(newBlocks.get(i), newBlocks.get(i - 1))) {
-                System.err.println("Received chain is invalid at block " + i + ". Rejecting.");
-                return;
-            }
+    // Whole chain as a JSON array, stored blocks copied as they are on disk.
+    // A pruned node only has the latest blocks; peers sync the rest by headers.
+    private String getFullChainJson(Blockchain blockchain) {
+        if (blockchain.chain.getFirstFullHeight() > 0) {
+            return gson.toJson(List.of(blockchain.getLatestBlock()));
         }
-
-        // 3. Replace chain
-        blockchain.chain = newBlocks;
-        blockchain.chainStore.save(blockchain);
-        System.out.println("Chain replaced successfully.");
+        List<String> blocks = new ArrayList<>();
+        int size = blockchain.chain.size();
+        for (int height = 0; height < size; height++) {
+            blocks.add(blockchain.getBlockJson(height));
+        }
+        return JsonUtil.toJsonArray(blocks);
     }
 
     private void sendResponse(String type, String data) {
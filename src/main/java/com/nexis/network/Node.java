@@ -1,5 +1,6 @@
 package com.nexis.network;
 
+import com.nexis.consensus.BackgroundMiner;
 import com.nexis.core.Blockchain;
 import java.io.IOException;
 import java.net.ServerSocket;
@@ -10,12 +11,19 @@ public class Node {
     private int port;
     private Blockchain blockchain;
     private PeerManager peerManager;
+    private BackgroundMiner miner;
+    private ChainSync chainSync;
+    private OrphanResolver orphanResolver;
     private boolean running;
 
     public Node(int port) {
         this.port = port;
         this.blockchain = new Blockchain();
         this.peerManager = new PeerManager(this);
+        this.chainSync = new ChainSync(this);
+        this.orphanResolver = new OrphanResolver(this);
+        // Broadcast the new block to all peers
+        this.miner = new BackgroundMiner(blockchain, block -> peerManager.broadcastLatestBlock());
         this.running = false;
     }
 
@@ -58,10 +66,31 @@ public class Node {
         return peerManager;
     }
 
+    public ChainSync getChainSync() {
+        return chainSync;
+    }
+
+    public OrphanResolver getOrphanResolver() {
+        return orphanResolver;
+    }
+
+    public BackgroundMiner getMiner() {
+        return miner;
+    }
+
+    /**
+     * Mines one block in the background and waits for it. If a peer's block
+     * takes the tip meanwhile, mining restarts on top of it.
+     */
     public void mineMempool(java.security.PublicKey minerAddress) {
-        blockchain.mineMempool(minerAddress);
-        // Broadcast the new block to all peers
-        peerManager.broadcastLatestBlock();
+        try {
+            miner.submit(minerAddress).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            miner.cancel();
+        } catch (java.util.concurrent.ExecutionException e) {
+            System.err.println("Mining failed: " + e.getCause().getMessage());
+        }
     }
 
     public void broadcastTransaction(com.nexis.core.Transaction tx) {
@@ -0,0 +1,196 @@
+package com.nexis.network;
+
+import com.google.gson.Gson;
+import com.nexis.core.Block;
+import com.nexis.core.Blockchain;
+import com.nexis.core.OrphanBlockPool;
+import com.nexis.utils.JsonUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Connects blocks announced by peers, including ones that arrive before their
+ * parent.
+ *
+ * A block whose parent is unknown waits in the {@link OrphanBlockPool} and only
+ * the missing ancestors are requested (GET_ANCESTORS, answered with ANCESTORS)
+ * from the announcing peer. The same parent is requested at most once per
+ * timeout however many peers relay its children. When the gap closes, the
+ * waiting blocks are connected in height order, through a reorganization if
+ * they extend a competing branch. Gaps longer than {@link #MAX_ORPHAN_GAP}
+ * blocks are left to headers-first sync.
+ */
+public class OrphanResolver {
+
+    public static final int MAX_ORPHAN_GAP = 64;
+    private static final int FORK_STEP = 16; // Ancestors requested per round trip below our tip
+    private static final long REQUEST_TIMEOUT_MILLIS = 10_000;
+
+    static class GetAncestors {
+        String hash; // Newest block wanted
+        int max;
+    }
+
+    private final Node node;
+    private final Gson gson = JsonUtil.getGson();
+    private final OrphanBlockPool pool = new OrphanBlockPool();
+    private final Map<String, Long> requested = new HashMap<>(); // Parent hash -> request time
+
+    public OrphanResolver(Node node) {
+        this.node = node;
+    }
+
+    public OrphanBlockPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Handles a block announced by a peer: connects it if its parent is known,
+     * otherwise pools it and asks the peer for what is missing.
+     */
+    public synchronized void handleBlock(MessageHandler peer, Block block) {
+        Blockchain blockchain = node.getBlockchain();
+        if (block.index - blockchain.getLatestBlock().index > MAX_ORPHAN_GAP) {
+            if (!hasValidProof(block)) {
+                return;
+            }
+            System.out.println("Block " + block.index + " is far ahead of our tip. Syncing from peer...");
+            node.getChainSync().start(peer);
+            return;
+        }
+        if (admit(block)) {
+            connect(peer, pool.getRoot(block));
+        }
+    }
+
+    /**
+     * Handles a batch of ancestors we asked for, oldest first. They are pooled
+     * together and connected in one pass.
+     */
+    public synchronized void handleAncestors(MessageHandler peer, List<Block> blocks) {
+        Block newest = null;
+        for (Block block : blocks == null ? List.<Block>of() : blocks) {
+            if (admit(block)) {
+                newest = block;
+            }
+        }
+        if (newest != null) {
+            connect(peer, pool.getRoot(newest));
+        }
+    }
+
+    /**
+     * Serves GET_ANCESTORS: up to {@code max} main-chain blocks ending at the
+     * requested hash, oldest first.
+     */
+    public void handleGetAncestors(MessageHandler peer, String data) {
+        GetAncestors request = gson.fromJson(data, GetAncestors.class);
+        Blockchain blockchain = node.getBlockchain();
+        List<String> blocks = new ArrayList<>();
+
+        int height = request == null ? -1 : blockchain.getHeight(request.hash);
+        if (height >= 0) {
+            int max = Math.min(ChainSync.MAX_BLOCKS_PER_MESSAGE, Math.max(1, request.max));
+            long bytes = 0;
+            for (int h = height; h >= blockchain.chain.getFirstFullHeight() && blocks.size() < max; h--) {
+                String block = blockchain.getBlockJson(h);
+                bytes += block.length();
+                if (!blocks.isEmpty() && bytes > ChainSync.MAX_BLOCK_BYTES_PER_MESSAGE) {
+                    break; // The requester asks again for older ones
+                }
+                blocks.add(block);
+            }
+            Collections.reverse(blocks);
+        }
+        peer.sendMessage(gson.toJson(new MessageHandler.Message("ANCESTORS", JsonUtil.toJsonArray(blocks))));
+    }
+
+    // Pools a block unless we already have it; false if it was not added
+    private boolean admit(Block block) {
+        if (node.getBlockchain().getHeight(block.hash) >= 0 || pool.contains(block.hash)) {
+            return false; // Already have it (e.g. relayed by several peers)
+        }
+        if (!hasValidProof(block)) {
+            return false; // Free to make; must not evict real orphans or trigger requests
+        }
+        long now = System.currentTimeMillis();
+        requested.remove(block.hash);
+        requested.values().removeIf(at -> now - at > REQUEST_TIMEOUT_MILLIS);
+        return pool.add(block, now);
+    }
+
+    // Hash matches the contents and meets the difficulty (or carries a validator)
+    private boolean hasValidProof(Block block) {
+        try {
+            if (node.getBlockchain().isValidBlockHeader(block)) {
+                return true;
+            }
+        } catch (RuntimeException e) {
+            // Malformed fields
+        }
+        System.out.println("Dropped block " + block.index + " from peer: invalid hash or proof of work");
+        return false;
+    }
+
+    // Connects the pooled branch starting at root if it is now attached and long enough
+    private void connect(MessageHandler peer, Block root) {
+        Blockchain blockchain = node.getBlockchain();
+        int parentHeight = blockchain.getHeight(root.previousHash);
+        if (parentHeight < 0) {
+            requestAncestors(peer, root);
+            return;
+        }
+
+        List<Block> branch = pool.getLongestBranch(root);
+        int tipHeight = blockchain.getLatestBlock().index;
+        if (parentHeight + branch.size() <= tipHeight) {
+            return; // Competing branch, not longer than ours (yet)
+        }
+        for (Block block : branch) {
+            pool.remove(block.hash);
+        }
+
+        if (parentHeight == tipHeight) {
+            int connected = 0;
+            for (Block block : branch) {
+                if (!blockchain.isValidBlock(block, blockchain.getLatestBlock())
+                        || !blockchain.tryAppendBlock(block)) {
+                    System.err.println("Block " + block.index + " could not be connected. Dropping it and "
+                            + pool.removeWithDescendants(block.hash) + " pooled descendant(s).");
+                    break;
+                }
+                connected++;
+            }
+            if (connected == 0) {
+                return;
+            }
+            if (branch.size() > 1) {
+                System.out.println("Connected " + connected + " block(s) that arrived out of order");
+            }
+            blockchain.chainStore.save(blockchain);
+        } else if (!blockchain.reorganize(parentHeight, branch)) {
+            return;
+        }
+        node.getPeerManager().broadcastLatestBlock();
+    }
+
+    private void requestAncestors(MessageHandler peer, Block root) {
+        Long at = requested.get(root.previousHash);
+        long now = System.currentTimeMillis();
+        if (at != null && now - at <= REQUEST_TIMEOUT_MILLIS) {
+            return; // Already asked (possibly another peer)
+        }
+        requested.put(root.previousHash, now);
+
+        // Exactly the gap to our tip if the peer extends our chain; a fork walks back in steps
+        int gap = root.index - 1 - node.getBlockchain().getLatestBlock().index;
+        GetAncestors request = new GetAncestors();
+        request.hash = root.previousHash;
+        request.max = Math.min(ChainSync.MAX_BLOCKS_PER_MESSAGE, gap > 0 ? gap : FORK_STEP);
+        peer.sendMessage(gson.toJson(new MessageHandler.Message("GET_ANCESTORS", gson.toJson(request))));
+    }
+}
@@ -49,11 +49,25 @@ public class PeerManager {
         broadcast(gson.toJson(msg));
     }
 
+    /**
+     * Relays a batch of transactions in one message.
+     */
+    public void broadcastTransactions(List<com.nexis.core.Transaction> txs) {
+        Gson gson = JsonUtil.getGson();
+        MessageHandler.Message msg = new MessageHandler.Message("BROADCAST_TRANSACTIONS", gson.toJson(txs));
+        broadcast(gson.toJson(msg));
+    }
+
     public int getPeerCount() {
         return peers.size();
     }
 
+    public List<MessageHandler> getPeers() {
+        return new java.util.ArrayList<>(peers);
+    }
+
     public void removePeer(MessageHandler peer) {
         peers.remove(peer);
+        node.getChainSync().peerDisconnected(peer);
     }
 }
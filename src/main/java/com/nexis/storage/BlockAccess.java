@@ -0,0 +1,79 @@
+package com.nexis.storage;
+
+import com.nexis.core.Block;
+
+import java.util.List;
+
+/**
+ * The main chain by height. Implementations decide which blocks stay in
+ * memory; callers only see heights.
+ */
+public interface BlockAccess extends Iterable<Block> {
+
+    /**
+     * @return Number of blocks (tip height + 1)
+     */
+    int size();
+
+    /**
+     * @throws RuntimeException if the block has been pruned
+     */
+    Block get(int height);
+
+    Block getLatest();
+
+    /**
+     * Adds the block following the current tip.
+     */
+    void append(Block block);
+
+    /**
+     * Removes the tip (rolling back a block).
+     */
+    Block removeLast();
+
+    /**
+     * @return The lowest height appended or removed since the previous call,
+     *         {@link Integer#MAX_VALUE} if the chain has not changed
+     */
+    int takeChangedFrom();
+
+    /**
+     * @return What {@link #takeChangedFrom} would return, without resetting it
+     */
+    int getChangedFrom();
+
+    /**
+     * @return Height of the main-chain block with this hash, or -1
+     */
+    int findHeight(String hash);
+
+    /**
+     * @return Hash of the block at this height, available even if the block
+     *         has been pruned
+     */
+    String getHash(int height);
+
+    /**
+     * @return Header of the block at this height, available even if the block
+     *         has been pruned
+     */
+    BlockStore.StoredHeader getHeader(int height);
+
+    /**
+     * @return The lowest height whose full block is available (0 unless the
+     *         node prunes old blocks)
+     */
+    int getFirstFullHeight();
+
+    /**
+     * @return The block at this height serialized as JSON (as sent to peers)
+     */
+    String getJson(int height);
+
+    /**
+     * @return Read-only list view, for code that works on lists of blocks.
+     *         Pruned heights cannot be read through it.
+     */
+    List<Block> asList();
+}
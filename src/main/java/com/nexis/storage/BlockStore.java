@@ -0,0 +1,927 @@
+package com.nexis.storage;
+
+import com.google.gson.Gson;
+import com.nexis.core.Block;
+import com.nexis.core.BlockHeader;
+import com.nexis.core.NetworkConfig;
+import com.nexis.crypto.HashUtil;
+import com.nexis.utils.JsonUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Append-only block log split into fixed-size segment files, with a
+ * height -> (segment, offset) index.
+ *
+ * Segment files ({@code blk00000.dat}, ...) start with an 8-byte header (magic,
+ * format version) followed by one record per block:
+ *
+ * <pre>
+ * length(4) crc32(4) block JSON (UTF-8, length bytes)
+ * </pre>
+ *
+ * {@code index.dat} holds one {@value #INDEX_ENTRY_SIZE}-byte entry per height:
+ * segment(4) offset(8) block hash(32). {@code headers.dat} holds one
+ * {@value #HEADER_ENTRY_SIZE}-byte entry per height: flags(1) (binary header,
+ * proof of stake) and the {@link BlockHeader} bytes (zero before version 1).
+ *
+ * Committing a block appends its record and one index entry; a new segment is
+ * started once the current one reaches the configured size. Rolling back
+ * truncates both files to the fork height. On open, a record written without
+ * its index entry (or cut short) by a crash is indexed again or cut off.
+ *
+ * Random reads by height or hash go through read-only memory maps of the
+ * sealed segments (the one being appended to is read with positional reads),
+ * and the record bytes can be served as JSON without decoding the block.
+ * Records are copied out of the map under the lock: a rollback into a sealed
+ * segment truncates that mapped file, and a view still held by a reader would
+ * then point past its end.
+ *
+ * A pruned store deletes whole sealed segments below a height: their blocks
+ * are gone, but their index entries and headers stay, so hashes and headers
+ * remain available for every height.
+ *
+ * Old sealed segments can be compressed for cold storage. A compressed
+ * segment (format version {@value #COMPRESSED_VERSION}) holds one Deflate
+ * frame per block, found through a table keyed by the record's original
+ * offset, so the index is left as it is:
+ *
+ * <pre>
+ * magic(4) version(4) frame count(4)
+ * count x { record offset(8) frame offset(8) }, ascending
+ * frames: length(4) raw length(4) crc32 of the raw record(4) deflated record
+ * </pre>
+ *
+ * Rolling back into a compressed segment restores its raw layout first.
+ */
+public class BlockStore {
+
+    public static final String DEFAULT_DIR = "nexis_blocks";
+    public static final int SEGMENT_MAGIC = 0x4E585342; // "NXSB"
+    public static final int FORMAT_VERSION = 1;
+    public static final int COMPRESSED_VERSION = 2;
+    public static final int SEGMENT_HEADER_SIZE = 8;
+    public static final int RECORD_HEADER_SIZE = 8;
+    public static final int INDEX_ENTRY_SIZE = 44;
+    public static final int HEADER_ENTRY_SIZE = 1 + BlockHeader.SIZE;
+    private static final String INDEX_FILE = "index.dat";
+    private static final String HEADERS_FILE = "headers.dat";
+    private static final int FLAG_BINARY_HEADER = 1;
+    private static final int FLAG_PROOF_OF_STAKE = 2;
+    private static final int FRAME_ENTRY_SIZE = 16;
+    private static final int FRAME_HEADER_SIZE = 12;
+
+    /**
+     * Where a block's record starts.
+     */
+    public static class Position {
+        public final int segment;
+        public final long offset;
+
+        public Position(int segment, long offset) {
+            this.segment = segment;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * What is kept of a block after its body is pruned.
+     */
+    public static class StoredHeader {
+        public final int height;
+        public final String hash;
+        public final String previousHash;
+        public final boolean proofOfStake;
+        public final byte[] header; // BlockHeader bytes, null before version 1
+
+        public StoredHeader(int height, String hash, String previousHash, boolean proofOfStake, byte[] header) {
+            this.height = height;
+            this.hash = hash;
+            this.previousHash = previousHash;
+            this.proofOfStake = proofOfStake;
+            this.header = header;
+        }
+
+        public static StoredHeader of(Block block) {
+            return new StoredHeader(block.index, block.hash, block.previousHash, block.validator != null,
+                    block.hasBinaryHeader() ? block.getHeader().toBytes() : null);
+        }
+    }
+
+    private final File dir;
+    private final long maxSegmentBytes;
+    private final Gson gson = JsonUtil.getGson();
+
+    // Height -> position, mirrored from index.dat
+    private int[] segments = new int[1024];
+    private long[] offsets = new long[1024];
+    private int count;
+    private int firstFull; // Lowest height whose block has not been pruned
+    private final HashIndex hashes = new HashIndex();
+    private final Map<Integer, MappedByteBuffer> mapped = new HashMap<>(); // Sealed segments
+    private final Set<Integer> compressed = new HashSet<>();
+    private int truncations; // Lets a compression started outside the lock notice a rollback
+
+    private RandomAccessFile index;
+    private RandomAccessFile headers;
+    private RandomAccessFile current; // Segment being appended to
+    private int currentSegment;
+
+    public BlockStore() {
+        this(DEFAULT_DIR, NetworkConfig.getInstance().getMaxSegmentBytes());
+    }
+
+    public BlockStore(String dir, long maxSegmentBytes) {
+        this.dir = new File(dir);
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.dir.mkdirs();
+        try {
+            open();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open block store in " + dir, e);
+        }
+    }
+
+    public File getDirectory() {
+        return dir;
+    }
+
+    /**
+     * @return Height of the last stored block, -1 if the store is empty
+     */
+    public synchronized int getHeight() {
+        return count - 1;
+    }
+
+    /**
+     * @return The lowest height whose block is still stored (0 unless pruned)
+     */
+    public synchronized int getFirstFullHeight() {
+        return firstFull;
+    }
+
+    public synchronized Position getPosition(int height) {
+        checkHeight(height);
+        return new Position(segments[height], offsets[height]);
+    }
+
+    public File getSegmentFile(int segment) {
+        return new File(dir, String.format("blk%05d.dat", segment));
+    }
+
+    /**
+     * @return Height of the stored block with this hash, or -1
+     */
+    public synchronized int findHeight(String hash) {
+        int height = hashes.get(hash);
+        return height >= 0 && height < count && getHash(height).equals(hash) ? height : -1;
+    }
+
+    /**
+     * @return The hash recorded for the block at this height
+     */
+    public synchronized String getHash(int height) {
+        checkHeight(height);
+        byte[] hash = new byte[HashUtil.SHA256_LENGTH];
+        try {
+            index.seek((long) height * INDEX_ENTRY_SIZE + 12);
+            index.readFully(hash);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read block index", e);
+        }
+        return HashUtil.bytesToHex(hash);
+    }
+
+    /**
+     * @return The header of the block at this height, kept even if the block
+     *         has been pruned
+     */
+    public synchronized StoredHeader getHeader(int height) {
+        checkHeight(height);
+        byte[] entry = new byte[HEADER_ENTRY_SIZE];
+        try {
+            headers.seek((long) height * HEADER_ENTRY_SIZE);
+            headers.readFully(entry);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read block headers", e);
+        }
+        int flags = entry[0];
+        byte[] header = (flags & FLAG_BINARY_HEADER) != 0 ? Arrays.copyOfRange(entry, 1, entry.length) : null;
+        // Blocks link by hash, so the parent's index entry is the previous hash
+        String previousHash = height == 0 ? "0" : getHash(height - 1);
+        return new StoredHeader(height, getHash(height), previousHash, (flags & FLAG_PROOF_OF_STAKE) != 0, header);
+    }
+
+    /**
+     * Appends the block following the stored tip.
+     */
+    public synchronized void append(Block block) {
+        if (block.index != count) {
+            throw new RuntimeException("Block " + block.index + " does not follow stored height " + (count - 1));
+        }
+        byte[] payload = gson.toJson(block).getBytes(StandardCharsets.UTF_8);
+        try {
+            long offset = current.length();
+            if (offset > SEGMENT_HEADER_SIZE && offset + RECORD_HEADER_SIZE + payload.length > maxSegmentBytes) {
+                startSegment(currentSegment + 1);
+                offset = SEGMENT_HEADER_SIZE;
+            }
+
+            ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+            record.putInt(payload.length).putInt(crc(payload)).put(payload);
+            current.seek(offset);
+            current.write(record.array());
+            writeHeader(StoredHeader.of(block), count);
+
+            ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+            entry.putInt(currentSegment).putLong(offset).put(HashUtil.hexToBytes(block.hash));
+            index.seek((long) count * INDEX_ENTRY_SIZE);
+            index.write(entry.array());
+            hashes.put(block.hash, count);
+            addPosition(currentSegment, offset);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to append block " + block.index, e);
+        }
+    }
+
+    /**
+     * Drops every block above {@code height} (-1 empties the store). A pruned
+     * store can only be rolled back to a height whose block it still holds,
+     * or emptied.
+     */
+    public synchronized void truncate(int height) {
+        if (height >= count - 1) {
+            return;
+        }
+        int first = Math.max(0, height + 1);
+        if (first > 0 && first <= firstFull) {
+            throw new RuntimeException("Cannot roll back to height " + height + ": blocks below " + firstFull
+                    + " have been pruned");
+        }
+        try {
+            for (int h = first; h < count; h++) {
+                hashes.remove(getHash(h));
+            }
+            int segment = segments[first];
+            long offset = first == 0 ? SEGMENT_HEADER_SIZE : offsets[first];
+            if (compressed.contains(segment) && first >= firstFull) {
+                decompress(segment); // Appended to again
+            }
+            truncations++;
+            compressed.removeIf(s -> s >= segment);
+            mapped.keySet().removeIf(s -> s >= segment);
+            for (int s = currentSegment; s > segment; s--) {
+                getSegmentFile(s).delete();
+            }
+            if (first < firstFull) {
+                // Emptied after pruning: its first segment is gone, start it again
+                firstFull = 0;
+                startSegment(segment);
+            } else if (segment != currentSegment) {
+                current.close();
+                current = new RandomAccessFile(getSegmentFile(segment), "rw");
+                currentSegment = segment;
+            }
+            current.setLength(offset);
+            index.setLength((long) first * INDEX_ENTRY_SIZE);
+            headers.setLength((long) first * HEADER_ENTRY_SIZE);
+            count = first;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to truncate block store to height " + height, e);
+        }
+    }
+
+    /**
+     * Makes the store hold exactly {@code chain}: blocks above the last height
+     * both agree on are dropped and the rest of the chain is appended. After a
+     * new block or a reorganization only the changed tail is written.
+     *
+     * @return The number of blocks appended
+     */
+    public synchronized int sync(List<Block> chain) {
+        int common = findCommonHeight(chain);
+        truncate(common);
+        for (int height = common + 1; height < chain.size(); height++) {
+            append(chain.get(height));
+        }
+        return chain.size() - 1 - common;
+    }
+
+    /**
+     * @return The last height at which the store and {@code chain} hold the
+     *         same block, -1 if they share none
+     */
+    public synchronized int findCommonHeight(List<Block> chain) {
+        int common = Math.min(count, chain.size()) - 1;
+        while (common >= 0 && !chain.get(common).hash.equals(getHash(common))) {
+            common--;
+        }
+        return common;
+    }
+
+    /**
+     * Deletes the sealed segments that hold only blocks below {@code height}.
+     * Their index entries and headers are kept (and forced first, as the
+     * blocks can no longer be indexed again after a crash). The segment being
+     * appended to is never deleted.
+     *
+     * @return The number of segments deleted
+     */
+    public synchronized int prune(int height) {
+        int deleted = 0;
+        while (firstFull < count && segments[firstFull] != currentSegment) {
+            int segment = segments[firstFull];
+            int next = firstFull;
+            while (next < count && segments[next] == segment) {
+                next++;
+            }
+            if (next > height) {
+                break; // Holds a block that is kept
+            }
+            if (deleted == 0) {
+                try {
+                    index.getChannel().force(false);
+                    headers.getChannel().force(false);
+                } catch (IOException e) {
+                    throw new RuntimeException("Failed to flush block index before pruning", e);
+                }
+            }
+            // Marked first, so no reader goes looking for the file
+            firstFull = next;
+            mapped.remove(segment);
+            compressed.remove(segment);
+            if (!getSegmentFile(segment).delete()) {
+                System.err.println("Block store: could not delete pruned segment " + getSegmentFile(segment));
+            }
+            deleted++;
+        }
+        return deleted;
+    }
+
+    /**
+     * Compresses the oldest sealed segment still stored raw, leaving the
+     * {@code keepRaw} most recent sealed segments as they are. The frames are
+     * built outside the store's lock from the sealed file, which is then
+     * replaced in one rename.
+     *
+     * @return The segment compressed, or -1 if none is due
+     */
+    public int compressOldestSegment(int keepRaw) {
+        int segment = -1;
+        long[] recordOffsets;
+        int rollbacks;
+        synchronized (this) {
+            if (firstFull < count) {
+                for (int s = segments[firstFull]; s < currentSegment - keepRaw; s++) {
+                    if (!compressed.contains(s) && firstHeightOf(s) < firstHeightOf(s + 1)) {
+                        segment = s;
+                        break;
+                    }
+                }
+            }
+            if (segment < 0) {
+                return -1;
+            }
+            recordOffsets = Arrays.copyOfRange(offsets, firstHeightOf(segment), firstHeightOf(segment + 1));
+            rollbacks = truncations;
+        }
+
+        File file = getSegmentFile(segment);
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            writeCompressed(file, tmp, recordOffsets);
+            synchronized (this) {
+                if (truncations != rollbacks || !file.exists()) {
+                    tmp.delete(); // Rolled back or pruned meanwhile
+                    return -1;
+                }
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                compressed.add(segment);
+                mapped.remove(segment); // Readers of the old mapping keep it
+            }
+        } catch (IOException e) {
+            tmp.delete();
+            throw new RuntimeException("Failed to compress block segment " + file, e);
+        }
+        return segment;
+    }
+
+    public synchronized boolean isCompressed(int segment) {
+        return compressed.contains(segment);
+    }
+
+    /**
+     * Forces everything written so far to disk (sealed segments are forced
+     * when the next one is started).
+     */
+    public synchronized void force() {
+        try {
+            current.getChannel().force(false);
+            index.getChannel().force(false);
+            headers.getChannel().force(false);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to flush block store", e);
+        }
+    }
+
+    /**
+     * Reads one block.
+     */
+    public Block read(int height) {
+        return gson.fromJson(readJson(height), Block.class);
+    }
+
+    /**
+     * @return The stored JSON of the block at this height, without decoding it
+     */
+    public String readJson(int height) {
+        return StandardCharsets.UTF_8.decode(readPayload(height)).toString();
+    }
+
+    /**
+     * @return The record bytes of the block at this height, copied from the
+     *         segment or inflated from the frame of a compressed segment
+     */
+    public ByteBuffer readPayload(int height) {
+        ByteBuffer frame;
+        try {
+            synchronized (this) {
+                checkHeight(height);
+                if (height < firstFull) {
+                    throw new RuntimeException("Block " + height + " has been pruned");
+                }
+                int segment = segments[height];
+                long offset = offsets[height];
+                if (segment == currentSegment) {
+                    byte[] payload = readRecord(current.getChannel(), offset);
+                    if (payload == null) {
+                        throw new RuntimeException("Corrupt record for block " + height);
+                    }
+                    return ByteBuffer.wrap(payload).asReadOnlyBuffer();
+                }
+
+                MappedByteBuffer map = map(segment);
+                if (!compressed.contains(segment)) {
+                    byte[] payload = new byte[map.getInt((int) offset)];
+                    map.get((int) offset + RECORD_HEADER_SIZE, payload);
+                    return ByteBuffer.wrap(payload).asReadOnlyBuffer();
+                }
+                frame = findFrame(map, offset); // Replaced by rename, never truncated in place
+            }
+            // Inflated outside the lock
+            return ByteBuffer.wrap(inflate(frame)).asReadOnlyBuffer();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read block " + height, e);
+        }
+    }
+
+    /**
+     * Streams every stored block, segment by segment, in height order.
+     */
+    public synchronized List<Block> loadAll() {
+        if (firstFull > 0) {
+            throw new RuntimeException("Blocks below height " + firstFull + " have been pruned");
+        }
+        List<Block> chain = new ArrayList<>(count);
+        int height = 0;
+        try {
+            while (height < count) {
+                int segment = segments[height];
+                if (compressed.contains(segment)) {
+                    for (; height < count && segments[height] == segment; height++) {
+                        chain.add(read(height));
+                    }
+                    continue;
+                }
+                try (DataInputStream in = new DataInputStream(
+                        new BufferedInputStream(new FileInputStream(getSegmentFile(segment)), 1 << 16))) {
+                    in.skipNBytes(offsets[height]);
+                    while (height < count && segments[height] == segment) {
+                        int length = in.readInt();
+                        int crc = in.readInt();
+                        byte[] payload = in.readNBytes(length);
+                        if (payload.length != length || crc(payload) != crc) {
+                            throw new IOException("Corrupt record for block " + height);
+                        }
+                        chain.add(decode(payload));
+                        height++;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to load blocks: " + e.getMessage(), e);
+        }
+        return chain;
+    }
+
+    public synchronized void close() {
+        try {
+            index.close();
+            headers.close();
+            current.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close block store: " + e.getMessage());
+        }
+    }
+
+    public static int crc(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private Block decode(byte[] payload) {
+        return gson.fromJson(new String(payload, StandardCharsets.UTF_8), Block.class);
+    }
+
+    private void writeHeader(StoredHeader header, int height) throws IOException {
+        ByteBuffer entry = ByteBuffer.allocate(HEADER_ENTRY_SIZE);
+        int flags = (header.header != null ? FLAG_BINARY_HEADER : 0) | (header.proofOfStake ? FLAG_PROOF_OF_STAKE : 0);
+        entry.put((byte) flags);
+        if (header.header != null) {
+            entry.put(header.header);
+        }
+        headers.seek((long) height * HEADER_ENTRY_SIZE);
+        headers.write(entry.array());
+    }
+
+    private void checkHeight(int height) {
+        if (height < 0 || height >= count) {
+            throw new RuntimeException("No stored block at height " + height);
+        }
+    }
+
+    private void addPosition(int segment, long offset) {
+        if (count == segments.length) {
+            segments = Arrays.copyOf(segments, count * 2);
+            offsets = Arrays.copyOf(offsets, count * 2);
+        }
+        segments[count] = segment;
+        offsets[count] = offset;
+        count++;
+    }
+
+    private void open() throws IOException {
+        index = new RandomAccessFile(new File(dir, INDEX_FILE), "rw");
+        long entries = index.length() / INDEX_ENTRY_SIZE;
+        index.setLength(entries * INDEX_ENTRY_SIZE); // Drop a torn entry
+        byte[] entry = new byte[INDEX_ENTRY_SIZE];
+        byte[] hash = new byte[HashUtil.SHA256_LENGTH];
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(new File(dir, INDEX_FILE)), 1 << 16))) {
+            for (long i = 0; i < entries; i++) {
+                in.readFully(entry);
+                ByteBuffer buf = ByteBuffer.wrap(entry);
+                int segment = buf.getInt();
+                long offset = buf.getLong();
+                buf.get(hash);
+                hashes.put(HashUtil.bytesToHex(hash), count);
+                addPosition(segment, offset);
+            }
+        }
+
+        // Segments deleted by pruning come first
+        while (firstFull < count && !getSegmentFile(segments[firstFull]).exists()) {
+            firstFull++;
+        }
+        currentSegment = count == 0 ? 0 : segments[count - 1];
+        for (int s = firstFull < count ? segments[firstFull] : currentSegment; s < currentSegment; s++) {
+            if (readSegmentVersion(s) == COMPRESSED_VERSION) {
+                compressed.add(s);
+            }
+        }
+        if (!getSegmentFile(currentSegment).exists()) {
+            startSegment(currentSegment);
+        } else {
+            current = new RandomAccessFile(getSegmentFile(currentSegment), "rw");
+        }
+        recover();
+        openHeaders();
+    }
+
+    // Matches headers.dat to the index, filling in headers from the blocks
+    // (stores written before the file existed, or cut short by a crash)
+    private void openHeaders() throws IOException {
+        headers = new RandomAccessFile(new File(dir, HEADERS_FILE), "rw");
+        int stored = (int) Math.min(count, headers.length() / HEADER_ENTRY_SIZE);
+        headers.setLength((long) stored * HEADER_ENTRY_SIZE);
+        if (stored < firstFull) {
+            throw new IOException("Headers of pruned blocks are missing");
+        }
+        for (int height = stored; height < count; height++) {
+            writeHeader(StoredHeader.of(read(height)), height);
+        }
+    }
+
+    // Reconciles the tail of the log with the index after an unclean shutdown
+    private void recover() throws IOException {
+        if (current.length() < SEGMENT_HEADER_SIZE) {
+            startSegment(currentSegment); // Created but never written
+        }
+        // Indexed records whose bytes did not make it to disk
+        while (count > firstFull && !isIntact(count - 1)) {
+            hashes.remove(getHash(count - 1));
+            count--;
+        }
+        index.setLength((long) count * INDEX_ENTRY_SIZE);
+        if (count > 0 && segments[count - 1] != currentSegment) {
+            current.close();
+            currentSegment = segments[count - 1];
+            current = new RandomAccessFile(getSegmentFile(currentSegment), "rw");
+        }
+
+        // Complete records written after the last index entry are indexed again
+        long end = count == 0 ? SEGMENT_HEADER_SIZE : recordEnd(count - 1);
+        int recovered = 0;
+        while (true) {
+            byte[] payload = end < current.length() ? readRecord(current.getChannel(), end) : null;
+            Block block = null;
+            if (payload != null) {
+                try {
+                    block = decode(payload);
+                } catch (RuntimeException e) {
+                    block = null;
+                }
+            }
+            if (block != null && block.index == count) {
+                // Written in full, so appending the index entry again completes it
+                ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+                entry.putInt(currentSegment).putLong(end).put(HashUtil.hexToBytes(block.hash));
+                index.seek((long) count * INDEX_ENTRY_SIZE);
+                index.write(entry.array());
+                hashes.put(block.hash, count);
+                addPosition(currentSegment, end);
+                end += RECORD_HEADER_SIZE + payload.length;
+                recovered++;
+                continue;
+            }
+            if (end >= current.length() && getSegmentFile(currentSegment + 1).exists()) {
+                // The writer had moved on to the next segment
+                current.close();
+                currentSegment++;
+                current = new RandomAccessFile(getSegmentFile(currentSegment), "rw");
+                end = SEGMENT_HEADER_SIZE;
+                continue;
+            }
+            break;
+        }
+
+        if (end < current.length()) {
+            System.err.println("Block store: dropped " + (current.length() - end) + " bytes of incomplete records");
+            current.setLength(end);
+        }
+        for (int s = currentSegment + 1; getSegmentFile(s).exists(); s++) {
+            getSegmentFile(s).delete();
+        }
+        if (recovered > 0) {
+            System.out.println("Block store: recovered " + recovered + " unindexed block(s)");
+        }
+    }
+
+    private boolean isIntact(int height) throws IOException {
+        File file = getSegmentFile(segments[height]);
+        if (!file.exists()) {
+            return false;
+        }
+        if (compressed.contains(segments[height])) {
+            return true; // Written in full before it replaced the raw segment
+        }
+        try (RandomAccessFile segment = new RandomAccessFile(file, "r")) {
+            return readRecord(segment.getChannel(), offsets[height]) != null;
+        }
+    }
+
+    private long recordEnd(int height) throws IOException {
+        try (RandomAccessFile segment = new RandomAccessFile(getSegmentFile(segments[height]), "r")) {
+            segment.seek(offsets[height]);
+            return offsets[height] + RECORD_HEADER_SIZE + segment.readInt();
+        }
+    }
+
+    // Returns the payload of the record at offset, or null if it is incomplete or corrupt
+    private static byte[] readRecord(FileChannel channel, long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        if (readFully(channel, header, offset) < RECORD_HEADER_SIZE) {
+            return null;
+        }
+        header.flip();
+        int length = header.getInt();
+        int crc = header.getInt();
+        if (length < 0 || offset + RECORD_HEADER_SIZE + length > channel.size()) {
+            return null;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(channel, payload, offset + RECORD_HEADER_SIZE);
+        return crc(payload.array()) == crc ? payload.array() : null;
+    }
+
+    private static int readFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        int total = 0;
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, position + total);
+            if (n < 0) {
+                break;
+            }
+            total += n;
+        }
+        return total;
+    }
+
+    private MappedByteBuffer map(int segment) throws IOException {
+        MappedByteBuffer map = mapped.get(segment);
+        if (map == null) {
+            try (FileChannel channel = FileChannel.open(getSegmentFile(segment).toPath())) {
+                map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            mapped.put(segment, map);
+        }
+        return map;
+    }
+
+    // Lowest height stored in this segment or a later one
+    private int firstHeightOf(int segment) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (segments[mid] < segment) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int readSegmentVersion(int segment) throws IOException {
+        File file = getSegmentFile(segment);
+        if (!file.exists() || file.length() < SEGMENT_HEADER_SIZE) {
+            return -1;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            in.readInt();
+            return in.readInt();
+        }
+    }
+
+    // Writes the compressed form of a sealed segment to tmp and forces it
+    private static void writeCompressed(File file, File tmp, long[] recordOffsets) throws IOException {
+        int frames = recordOffsets.length;
+        long tableEnd = SEGMENT_HEADER_SIZE + 4 + (long) frames * FRAME_ENTRY_SIZE;
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        long[] frameOffsets = new long[frames];
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        byte[] buf = new byte[1 << 16];
+        try (FileChannel in = FileChannel.open(file.toPath())) {
+            for (int i = 0; i < frames; i++) {
+                byte[] payload = readRecord(in, recordOffsets[i]);
+                if (payload == null) {
+                    throw new IOException("Corrupt record at offset " + recordOffsets[i]);
+                }
+                deflater.reset();
+                deflater.setInput(payload);
+                deflater.finish();
+                ByteArrayOutputStream deflated = new ByteArrayOutputStream(payload.length / 2 + 64);
+                while (!deflater.finished()) {
+                    deflated.write(buf, 0, deflater.deflate(buf));
+                }
+                frameOffsets[i] = tableEnd + body.size();
+                ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+                header.putInt(deflated.size()).putInt(payload.length).putInt(crc(payload));
+                body.write(header.array());
+                deflated.writeTo(body);
+            }
+        } finally {
+            deflater.end();
+        }
+
+        try (FileOutputStream stream = new FileOutputStream(tmp)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+            out.writeInt(SEGMENT_MAGIC);
+            out.writeInt(COMPRESSED_VERSION);
+            out.writeInt(frames);
+            for (int i = 0; i < frames; i++) {
+                out.writeLong(recordOffsets[i]);
+                out.writeLong(frameOffsets[i]);
+            }
+            body.writeTo(out);
+            out.flush();
+            stream.getFD().sync();
+        }
+    }
+
+    // Rewrites a compressed segment in its raw layout; records land at the
+    // offsets the index already holds
+    private void decompress(int segment) throws IOException {
+        MappedByteBuffer map = map(segment);
+        int frames = map.getInt(SEGMENT_HEADER_SIZE);
+        File file = getSegmentFile(segment);
+        File tmp = new File(file.getPath() + ".tmp");
+        try (RandomAccessFile out = new RandomAccessFile(tmp, "rw")) {
+            out.setLength(0);
+            out.writeInt(SEGMENT_MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            for (int i = 0; i < frames; i++) {
+                int entry = SEGMENT_HEADER_SIZE + 4 + i * FRAME_ENTRY_SIZE;
+                byte[] payload = inflate(frameAt(map, (int) map.getLong(entry + 8)));
+                out.seek(map.getLong(entry));
+                out.writeInt(payload.length);
+                out.writeInt(crc(payload));
+                out.write(payload);
+            }
+            out.getFD().sync();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        compressed.remove(segment);
+        mapped.remove(segment);
+    }
+
+    // Binary search of the frame table
+    private static ByteBuffer findFrame(ByteBuffer map, long offset) throws IOException {
+        int low = 0;
+        int high = map.getInt(SEGMENT_HEADER_SIZE) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int entry = SEGMENT_HEADER_SIZE + 4 + mid * FRAME_ENTRY_SIZE;
+            long recordOffset = map.getLong(entry);
+            if (recordOffset < offset) {
+                low = mid + 1;
+            } else if (recordOffset > offset) {
+                high = mid - 1;
+            } else {
+                return frameAt(map, (int) map.getLong(entry + 8));
+            }
+        }
+        throw new IOException("No frame for the record at offset " + offset);
+    }
+
+    private static ByteBuffer frameAt(ByteBuffer map, int position) {
+        return map.slice(position, FRAME_HEADER_SIZE + map.getInt(position));
+    }
+
+    private static byte[] inflate(ByteBuffer frame) throws IOException {
+        int length = frame.getInt(0);
+        byte[] payload = new byte[frame.getInt(4)];
+        int crc = frame.getInt(8);
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(frame.slice(FRAME_HEADER_SIZE, length));
+            int inflated = 0;
+            while (inflated < payload.length) {
+                int n = inflater.inflate(payload, inflated, payload.length - inflated);
+                if (n == 0) {
+                    break; // Input used up early
+                }
+                inflated += n;
+            }
+            if (inflated != payload.length || crc(payload) != crc) {
+                throw new IOException("Corrupt compressed frame");
+            }
+            return payload;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed frame", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private void startSegment(int segment) throws IOException {
+        if (current != null) {
+            current.getChannel().force(false); // Sealed for good
+            current.close();
+        }
+        current = new RandomAccessFile(getSegmentFile(segment), "rw");
+        current.setLength(0);
+        current.writeInt(SEGMENT_MAGIC);
+        current.writeInt(FORMAT_VERSION);
+        currentSegment = segment;
+    }
+}
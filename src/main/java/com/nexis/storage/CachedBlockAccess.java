@@ -0,0 +1,300 @@
+package com.nexis.storage;
+
+import com.nexis.core.Block;
+import com.nexis.core.NetworkConfig;
+import com.nexis.utils.JsonUtil;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * Chain backed by the {@link BlockStore}, with a bounded amount in the heap.
+ *
+ * The last {@code pinnedBlocks} blocks, and any block not yet saved, are kept
+ * in memory (the tail). Older blocks are read from the store's mapped segments
+ * on demand and kept in an LRU cache limited to {@code cacheBytes} of
+ * (approximate) block size. Heap use therefore does not grow with the chain.
+ *
+ * Every height below the tail is stored with the same hash as on the chain, so
+ * those reads and hash lookups can go to the store directly. If the store has
+ * been pruned, blocks below its first full height can no longer be read, but
+ * their hashes and headers can.
+ */
+public class CachedBlockAccess implements BlockAccess {
+
+    private final BlockStore store;
+    private final int pinnedBlocks;
+    private final long cacheBytes;
+
+    // Heights tailStart .. size - 1
+    private final List<Block> tail = new ArrayList<>();
+    private final Map<String, Integer> tailHeights = new HashMap<>();
+    private int tailStart;
+    private int changedFrom = Integer.MAX_VALUE;
+
+    // Access-ordered: the first entry is the least recently used
+    private final LinkedHashMap<Integer, Block> cache = new LinkedHashMap<>(256, 0.75f, true);
+    private long cachedBytes;
+    private long hits;
+    private long misses;
+
+    public CachedBlockAccess(BlockStore store) {
+        this(store, NetworkConfig.getInstance().getPinnedBlocks(), NetworkConfig.getInstance().getBlockCacheBytes());
+    }
+
+    /**
+     * Opens the chain held by the store, reading only the pinned tail.
+     */
+    public CachedBlockAccess(BlockStore store, int pinnedBlocks, long cacheBytes) {
+        this.store = store;
+        this.pinnedBlocks = Math.max(1, pinnedBlocks);
+        this.cacheBytes = cacheBytes;
+
+        int stored = store.getHeight() + 1;
+        tailStart = Math.max(store.getFirstFullHeight(), stored - this.pinnedBlocks);
+        for (int height = tailStart; height < stored; height++) {
+            Block block = store.read(height);
+            tail.add(block);
+            tailHeights.put(block.hash, height);
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return tailStart + tail.size();
+    }
+
+    @Override
+    public Block get(int height) {
+        synchronized (this) {
+            if (height < 0 || height >= size()) {
+                throw new IndexOutOfBoundsException("No block at height " + height);
+            }
+            if (height >= tailStart) {
+                hits++;
+                return tail.get(height - tailStart);
+            }
+            if (height < store.getFirstFullHeight()) {
+                throw new RuntimeException("Block " + height + " has been pruned");
+            }
+            Block cached = cache.get(height);
+            if (cached != null) {
+                hits++;
+                return cached;
+            }
+            misses++;
+        }
+
+        // Decoded outside the lock; blocks below the tail never change
+        Block block = store.read(height);
+        synchronized (this) {
+            if (height < tailStart && !cache.containsKey(height)) {
+                cache.put(height, block);
+                cachedBytes += block.getSerializedSize();
+                evict();
+            }
+        }
+        return block;
+    }
+
+    @Override
+    public synchronized Block getLatest() {
+        return tail.isEmpty() ? get(size() - 1) : tail.get(tail.size() - 1);
+    }
+
+    @Override
+    public synchronized void append(Block block) {
+        if (block.index != size()) {
+            throw new RuntimeException("Block " + block.index + " does not follow height " + (size() - 1));
+        }
+        tail.add(block);
+        tailHeights.put(block.hash, block.index);
+        changedFrom = Math.min(changedFrom, block.index);
+
+        // Saved blocks beyond the pinned window move to the cache
+        while (tail.size() > pinnedBlocks && isStored(tail.get(0))) {
+            Block oldest = tail.remove(0);
+            tailHeights.remove(oldest.hash);
+            tailStart++;
+            cache.put(oldest.index, oldest);
+            cachedBytes += oldest.getSerializedSize();
+        }
+        evict();
+    }
+
+    @Override
+    public synchronized Block removeLast() {
+        int height = size() - 1;
+        if (height < 0) {
+            throw new RuntimeException("Chain is empty");
+        }
+        changedFrom = Math.min(changedFrom, height);
+        if (!tail.isEmpty()) {
+            Block block = tail.remove(tail.size() - 1);
+            tailHeights.remove(block.hash);
+            return block;
+        }
+        // Rolling back below the tail (deep reorganization)
+        Block block = get(height);
+        Block cached = cache.remove(height);
+        if (cached != null) {
+            cachedBytes -= cached.getSerializedSize();
+        }
+        tailStart--;
+        return block;
+    }
+
+    @Override
+    public synchronized int getChangedFrom() {
+        return changedFrom;
+    }
+
+    @Override
+    public synchronized int takeChangedFrom() {
+        int from = changedFrom;
+        changedFrom = Integer.MAX_VALUE;
+        return from;
+    }
+
+    @Override
+    public synchronized int findHeight(String hash) {
+        Integer height = hash == null ? null : tailHeights.get(hash);
+        if (height != null) {
+            return height;
+        }
+        int stored = store.findHeight(hash);
+        return stored >= 0 && stored < tailStart ? stored : -1;
+    }
+
+    @Override
+    public synchronized String getHash(int height) {
+        if (height < 0 || height >= size()) {
+            throw new IndexOutOfBoundsException("No block at height " + height);
+        }
+        return height >= tailStart ? tail.get(height - tailStart).hash : store.getHash(height);
+    }
+
+    @Override
+    public synchronized BlockStore.StoredHeader getHeader(int height) {
+        if (height < 0 || height >= size()) {
+            throw new IndexOutOfBoundsException("No block at height " + height);
+        }
+        return height >= tailStart ? BlockStore.StoredHeader.of(tail.get(height - tailStart)) : store.getHeader(height);
+    }
+
+    @Override
+    public int getFirstFullHeight() {
+        return store.getFirstFullHeight();
+    }
+
+    @Override
+    public String getJson(int height) {
+        Block block;
+        synchronized (this) {
+            if (height < 0 || height >= size()) {
+                throw new IndexOutOfBoundsException("No block at height " + height);
+            }
+            if (height < tailStart) {
+                return store.readJson(height); // Stored bytes as they are
+            }
+            block = tail.get(height - tailStart);
+            if (isStored(block)) {
+                return store.readJson(height);
+            }
+        }
+        return JsonUtil.getGson().toJson(block);
+    }
+
+    @Override
+    public List<Block> asList() {
+        return new ListView();
+    }
+
+    /**
+     * Iterates in height order, from the first full height. Stored blocks are
+     * streamed from the store without going through the cache.
+     */
+    @Override
+    public Iterator<Block> iterator() {
+        int end = size();
+        int start = getFirstFullHeight();
+        return new Iterator<Block>() {
+            private int height = start;
+
+            @Override
+            public boolean hasNext() {
+                return height < end;
+            }
+
+            @Override
+            public Block next() {
+                if (height >= end) {
+                    throw new NoSuchElementException();
+                }
+                int next = height++;
+                synchronized (CachedBlockAccess.this) {
+                    if (next >= tailStart) {
+                        return tail.get(next - tailStart);
+                    }
+                }
+                return store.read(next);
+            }
+        };
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    public synchronized int getCachedBlocks() {
+        return cache.size();
+    }
+
+    public synchronized int getPinnedBlocks() {
+        return tail.size();
+    }
+
+    private boolean isStored(Block block) {
+        return block.index <= store.getHeight() && store.findHeight(block.hash) == block.index;
+    }
+
+    private void evict() {
+        Iterator<Block> it = cache.values().iterator();
+        while (cachedBytes > cacheBytes && it.hasNext()) {
+            cachedBytes -= it.next().getSerializedSize();
+            it.remove();
+        }
+    }
+
+    private class ListView extends AbstractList<Block> implements RandomAccess {
+        @Override
+        public Block get(int index) {
+            return CachedBlockAccess.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return CachedBlockAccess.this.size();
+        }
+
+        @Override
+        public Iterator<Block> iterator() {
+            return CachedBlockAccess.this.iterator();
+        }
+    }
+}
@@ -3,40 +3,502 @@ package com.nexis.storage;
 import com.google.gson.*;
 import com.nexis.core.Block;
 import com.nexis.core.Blockchain;
+import com.nexis.core.NetworkConfig;
+import com.nexis.core.RevenueTracker;
 import com.nexis.crypto.KeyPairUtil;
+import com.nexis.utils.FileUtil;
+import com.nexis.utils.JsonUtil;
 
 import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.security.PublicKey;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.IntConsumer;
 
+/**
+ * Persists the chain in the segmented {@link BlockStore}, plus a small JSON
+ * summary of the supply counters. Chains saved by earlier versions as a single
+ * JSON document are migrated on first load.
+ *
+ * Saves are queued for a {@link PersistenceWriter} thread, so block
+ * production and relay do not wait for the disk. A save only holds the
+ * Blockchain lock while it takes the changes; it waits for room in the queue
+ * after releasing it, and saves are queued in the order they took them. The writer logs each save to
+ * a {@link WriteAheadLog} (one record with the blocks that changed, the new
+ * supply counters and the revenue of blocks mined here, which is counted only
+ * once the record is logged), one fsync per batch of queued saves, and then writes the block store
+ * without forcing it, followed by the transaction index records of those
+ * blocks. Once the log passes the checkpoint size, the store is
+ * forced, the summary and revenue files are rewritten atomically and the log
+ * starts over. On startup the records written since the last checkpoint are
+ * replayed into the store.
+ *
+ * Every snapshotInterval blocks, a save also carries a {@link StateSnapshot},
+ * which the writer stores once the blocks up to it are logged, and a
+ * checkpoint of the transaction index at the same tip, after which the index
+ * log starts over.
+ *
+ * In prune mode the writer then deletes the block segments that hold only
+ * blocks older than both the last pruneKeepBlocks blocks and the stored
+ * snapshot, which restarts need no blocks before. Headers and hashes of every
+ * height are kept. With compressSegments on, it compresses the oldest raw
+ * sealed segment after each batch, leaving the most recent ones raw.
+ */
 public class ChainStore {
 
-    private static final String CHAIN_FILE = "nexis_chain.json";
+    private static final String CHAIN_FILE = "nexis_chain.json"; // Legacy whole-chain document
+    private static final String SUMMARY_FILE = "nexis_chain_state.json";
+    private static final String WAL_FILE = "wal.log";
+    private static final String SNAPSHOT_FILE = "state.snap";
+    public static final byte RECORD_COMMIT = 1; // Write-ahead log record type
+
+    /**
+     * Supply counters at a given tip, written next to the chain file.
+     */
+    public static class ChainSummary {
+        public int height;
+        public String tipHash;
+        public double issuedSupply;
+        public double treasuryBalance;
+        public double totalFees;
+    }
+
+    /**
+     * Logged save: the chain from height {@code from} on (to the tip) is
+     * {@code blocks}.
+     */
+    private static class CommitRecord {
+        int from;
+        ChainSummary summary;
+        List<Block> blocks;
+        List<RevenueTracker.RevenueUpdate> revenue;
+    }
+
+    /**
+     * A save waiting for the writer thread.
+     */
+    private static class Commit {
+        final CommitRecord record;
+        final RevenueTracker revenue; // Written at checkpoints
+        TransactionIndex txIndex;
+        String indexRecords; // Of the commit's blocks, written once they are stored
+        TransactionIndex.Checkpoint indexCheckpoint; // Taken with the snapshot
+        byte[] snapshot; // Encoded state at the commit's tip, if one is due
+        int snapshotHeight;
+        String snapshotHash;
+
+        Commit(CommitRecord record, RevenueTracker revenue) {
+            this.record = record;
+            this.revenue = revenue;
+        }
+    }
 
     private Gson gson;
+    private final BlockStore blockStore;
+    private final WriteAheadLog wal;
+    private final PersistenceWriter<Commit> writer;
+    private final Object diskLock = new Object(); // Held while the log and the store are written
+    private final Object submitOrder = new Object(); // Guards the two counters below
+    private long commitsBuilt; // Saves that took their changes from the chain
+    private long commitsSubmitted; // Of those, handed to the writer
+    private ChainSummary latestSummary; // Of the last commit written or replayed
+    private int snapshotHeight = -1; // Tip of the last snapshot taken
+    private int storedSnapshotHeight = -1; // Tip of the snapshot on disk
+    private String storedSnapshotHash;
+    private final List<IntConsumer> pruneListeners = new CopyOnWriteArrayList<>();
 
     public ChainStore() {
+        this(new BlockStore());
+    }
+
+    public ChainStore(BlockStore blockStore) {
+        this(blockStore, new WriteAheadLog(new File(blockStore.getDirectory(), WAL_FILE)));
+    }
+
+    public ChainStore(BlockStore blockStore, WriteAheadLog wal) {
+        this.blockStore = blockStore;
+        this.wal = wal;
         this.gson = new GsonBuilder()
                 .registerTypeHierarchyAdapter(PublicKey.class, new PublicKeyAdapter())
                 .setPrettyPrinting()
                 .create();
+        recover();
+        this.writer = new PersistenceWriter<>("chain-writer",
+                NetworkConfig.getInstance().getPersistQueueCapacity(), this::writeBatch);
+        // The writer is a daemon thread; let it finish queued saves on exit
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "chain-writer-flush"));
+    }
+
+    public BlockStore getBlockStore() {
+        return blockStore;
     }
 
-    public void save(Blockchain blockchain) {
-        try (FileWriter writer = new FileWriter(CHAIN_FILE)) {
-            gson.toJson(blockchain.chain, writer);
-            System.out.println("Blockchain saved to " + CHAIN_FILE);
+    public WriteAheadLog getWal() {
+        return wal;
+    }
+
+    public PersistenceWriter<?> getWriter() {
+        return writer;
+    }
+
+    /**
+     * Registers a callback run (on the writer thread) with the new first full
+     * height whenever old blocks are pruned.
+     */
+    public void addPruneListener(IntConsumer listener) {
+        pruneListeners.add(listener);
+    }
+
+    /**
+     * Queues the blocks changed since the previous save for the writer thread
+     * and returns without touching the disk (unless the queue is full). Only
+     * that tail is written, after rolling the store back to where it starts
+     * if a reorganization replaced blocks. With asyncPersistence off this
+     * waits until the save is durable.
+     *
+     * The changes are only taken from the chain once the commit is built, so
+     * a save that fails before that leaves them for the next one. A built
+     * commit is always queued (interrupts are deferred until it is), unless
+     * the writer has already failed and refuses every save.
+     *
+     * @return Ticket for {@link #awaitDurable}, 0 if nothing changed
+     * @throws RuntimeException If an earlier background write failed
+     */
+    public long save(Blockchain blockchain) {
+        Commit commit;
+        StateSnapshot snapshot = null;
+        long order;
+        synchronized (blockchain) {
+            int from = blockchain.chain.getChangedFrom();
+            if (from == Integer.MAX_VALUE) {
+                return 0;
+            }
+            CommitRecord record = new CommitRecord();
+            record.from = from;
+            record.summary = summarize(blockchain);
+            record.blocks = new ArrayList<>(blockchain.chain.asList().subList(from, blockchain.chain.size()));
+            record.revenue = blockchain.revenueTracker.getPending();
+            commit = new Commit(record, blockchain.revenueTracker);
+            commit.txIndex = blockchain.txIndex;
+            commit.indexRecords = blockchain.txIndex.getPending();
+
+            // A snapshot whenever the tip enters a new interval
+            int interval = NetworkConfig.getInstance().getSnapshotInterval();
+            int tip = blockchain.chain.size() - 1;
+            if (interval > 0 && tip / interval > snapshotHeight / interval) {
+                snapshot = blockchain.createSnapshot(); // Copies, encoded below
+                commit.snapshotHeight = tip;
+                commit.snapshotHash = blockchain.getLatestBlock().hash;
+                commit.indexCheckpoint = blockchain.txIndex.checkpoint(tip, commit.snapshotHash);
+            }
+            blockchain.chain.takeChangedFrom();
+            blockchain.txIndex.takePending();
+            blockchain.revenueTracker.takePending();
+            if (snapshot != null) {
+                snapshotHeight = tip;
+            }
+            synchronized (submitOrder) {
+                order = ++commitsBuilt;
+            }
+        }
+
+        if (snapshot != null) {
+            try {
+                commit.snapshot = snapshot.encode();
+            } catch (RuntimeException e) {
+                System.err.println("Failed to encode state snapshot: " + e.getMessage());
+            }
+        }
+        long ticket = submitInOrder(commit, order);
+        if (!NetworkConfig.getInstance().isAsyncPersistence()) {
+            awaitDurable(ticket);
+        }
+        return ticket;
+    }
+
+    // Queues commits in the order they were built, without holding the chain
+    // lock while the queue is full
+    private long submitInOrder(Commit commit, long order) {
+        boolean interrupted = false;
+        synchronized (submitOrder) {
+            while (commitsSubmitted != order - 1) {
+                try {
+                    submitOrder.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true; // Later saves wait for this one
+                }
+            }
+            try {
+                return writer.submit(commit);
+            } finally {
+                commitsSubmitted = order;
+                submitOrder.notifyAll();
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    public File getSnapshotFile() {
+        return new File(blockStore.getDirectory(), SNAPSHOT_FILE);
+    }
+
+    /**
+     * @return The latest state snapshot, or null if there is none (or it is
+     *         damaged)
+     */
+    public StateSnapshot loadSnapshot() {
+        StateSnapshot snapshot = StateSnapshot.read(getSnapshotFile());
+        if (snapshot != null) {
+            snapshotHeight = snapshot.height;
+            synchronized (diskLock) {
+                storedSnapshotHeight = snapshot.height;
+                storedSnapshotHash = snapshot.tipHash;
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Waits until the save with this ticket, and every earlier one, is durable
+     * (per the log's fsync policy).
+     */
+    public void awaitDurable(long ticket) {
+        writer.awaitDurable(ticket);
+    }
+
+    /**
+     * Durability barrier: waits until every save queued so far is durable.
+     */
+    public void flush() {
+        writer.flush();
+    }
+
+    /**
+     * Saves and writes everything the log covers to its final place, then
+     * starts a new log: the block store is forced and the summary and revenue
+     * files rewritten.
+     */
+    public void checkpoint(Blockchain blockchain) {
+        save(blockchain);
+        flush();
+        synchronized (diskLock) {
+            checkpoint(blockchain.revenueTracker);
+        }
+    }
+
+    // Writer thread: logs the batch with one commit, then applies it to the store
+    private void writeBatch(List<Commit> batch) {
+        synchronized (diskLock) {
+            long[] sequences = new long[batch.size()];
+            for (int i = 0; i < batch.size(); i++) {
+                sequences[i] = wal.append(RECORD_COMMIT,
+                        JsonUtil.getGson().toJson(batch.get(i).record).getBytes(StandardCharsets.UTF_8));
+            }
+            wal.commit(sequences[sequences.length - 1]);
+
+            int appended = 0;
+            Commit snapshot = null;
+            for (int i = 0; i < batch.size(); i++) {
+                Commit commit = batch.get(i);
+                appended += apply(commit.record);
+                if (commit.record.revenue != null && !commit.record.revenue.isEmpty()) {
+                    commit.revenue.applyLogged(commit.record.revenue, sequences[i]);
+                }
+                if (commit.snapshot != null) {
+                    snapshot = commit;
+                }
+            }
+            // One append for the batch; a crash before it only leaves blocks to
+            // index again. Records up to a checkpoint are part of it.
+            StringBuilder indexRecords = new StringBuilder();
+            TransactionIndex.Checkpoint indexCheckpoint = null;
+            for (Commit commit : batch) {
+                indexRecords.append(commit.indexRecords);
+                if (commit.indexCheckpoint != null) {
+                    indexCheckpoint = commit.indexCheckpoint;
+                    indexRecords.setLength(0);
+                }
+            }
+            TransactionIndex txIndex = batch.get(0).txIndex;
+            if (indexCheckpoint != null) {
+                txIndex.writeCheckpoint(indexCheckpoint);
+            }
+            txIndex.write(indexRecords.toString());
+            // After the blocks it covers are logged, so its tip is found on restart
+            if (snapshot != null) {
+                StateSnapshot.write(getSnapshotFile(), snapshot.snapshot);
+                storedSnapshotHeight = snapshot.snapshotHeight;
+                storedSnapshotHash = snapshot.snapshotHash;
+            }
+            System.out.println("Blockchain saved to " + blockStore.getDirectory() + " (" + appended
+                    + " block(s) appended, height " + blockStore.getHeight() + ")");
+            if (NetworkConfig.getInstance().isPruneMode()) {
+                prune();
+            }
+            if (NetworkConfig.getInstance().isCompressSegments()) {
+                compressSegment();
+            }
+            if (wal.size() >= NetworkConfig.getInstance().getWalCheckpointBytes()) {
+                checkpoint(batch.get(batch.size() - 1).revenue);
+            }
+        }
+    }
+
+    // Caller holds diskLock. Blocks from the stored snapshot on are kept, so a
+    // restart can always restore it and replay the rest.
+    private void prune() {
+        if (storedSnapshotHeight < 0 || storedSnapshotHeight > blockStore.getHeight()
+                || !blockStore.getHash(storedSnapshotHeight).equals(storedSnapshotHash)) {
+            return; // No snapshot of this chain yet
+        }
+        NetworkConfig config = NetworkConfig.getInstance();
+        int keep = Math.max(config.getPruneKeepBlocks(), config.getPinnedBlocks());
+        int below = Math.min(blockStore.getHeight() - keep + 1, storedSnapshotHeight);
+        int deleted = blockStore.prune(below);
+        if (deleted > 0) {
+            int firstFull = blockStore.getFirstFullHeight();
+            System.out.println("Pruned " + deleted + " block segment(s), keeping blocks from height " + firstFull);
+            for (IntConsumer listener : pruneListeners) {
+                listener.accept(firstFull);
+            }
+        }
+    }
+
+    // Caller holds diskLock. One segment per batch, so a backlog of old
+    // segments does not hold up saves.
+    private void compressSegment() {
+        int segment = blockStore.compressOldestSegment(NetworkConfig.getInstance().getUncompressedSegments());
+        if (segment >= 0) {
+            File file = blockStore.getSegmentFile(segment);
+            System.out.println("Compressed block segment " + file.getName() + " (" + file.length() + " bytes)");
+        }
+    }
+
+    // Caller holds diskLock. Nothing else appends to the log meanwhile, and
+    // revenue only changes on this thread, so the stats saved are exactly
+    // those of the commits the log held before it is emptied.
+    private void checkpoint(RevenueTracker revenue) {
+        blockStore.force();
+        if (latestSummary != null) {
+            saveSummary(latestSummary);
+        }
+        if (revenue != null) {
+            revenue.save();
+        }
+        wal.reset();
+        System.out.println("Checkpoint at height " + blockStore.getHeight() + ", write-ahead log restarted");
+    }
+
+    /**
+     * Makes the store match a logged commit. Blocks already stored (written
+     * before a crash) are skipped.
+     *
+     * @return The number of blocks appended
+     */
+    private int apply(CommitRecord record) {
+        if (record.from > blockStore.getHeight() + 1) {
+            throw new RuntimeException("Commit starts at height " + record.from + " but the block store ends at "
+                    + blockStore.getHeight());
+        }
+        if (record.blocks.isEmpty()) {
+            blockStore.truncate(record.from - 1); // Blocks removed only
+        }
+        int appended = 0;
+        for (Block block : record.blocks) {
+            if (block.index <= blockStore.getHeight() && block.hash.equals(blockStore.getHash(block.index))) {
+                continue;
+            }
+            blockStore.truncate(block.index - 1);
+            blockStore.append(block);
+            appended++;
+        }
+        latestSummary = record.summary;
+        return appended;
+    }
+
+    private ChainSummary summarize(Blockchain blockchain) {
+        ChainSummary summary = new ChainSummary();
+        summary.height = blockchain.chain.size() - 1;
+        summary.tipHash = blockchain.getLatestBlock().hash;
+        summary.issuedSupply = blockchain.ledger.getIssuedSupply();
+        summary.treasuryBalance = blockchain.ledger.getTreasuryBalance();
+        summary.totalFees = blockchain.ledger.getTotalFees();
+        return summary;
+    }
+
+    private void saveSummary(ChainSummary summary) {
+        try {
+            FileUtil.writeAtomically(new File(SUMMARY_FILE), gson.toJson(summary));
         } catch (IOException e) {
-            System.err.println("Failed to save blockchain: " + e.getMessage());
+            System.err.println("Failed to save chain summary: " + e.getMessage());
         }
     }
 
-    public List<Block> load() {
+    // Brings the block store up to the last logged commit
+    private void recover() {
+        int replayed = 0;
+        for (WriteAheadLog.Record entry : wal.getRecovered()) {
+            if (entry.type != RECORD_COMMIT) {
+                continue;
+            }
+            CommitRecord record = JsonUtil.getGson().fromJson(new String(entry.payload, StandardCharsets.UTF_8),
+                    CommitRecord.class);
+            try {
+                apply(record);
+            } catch (RuntimeException e) {
+                System.err.println("Write-ahead log commit " + entry.sequence + ": " + e.getMessage()
+                        + ". Stopping replay.");
+                break;
+            }
+            replayed++;
+        }
+        if (replayed > 0) {
+            System.out.println("Replayed " + replayed + " commit(s) from the write-ahead log (height "
+                    + blockStore.getHeight() + ")");
+        }
+    }
+
+    public ChainSummary loadSummary() {
+        if (latestSummary != null) {
+            return latestSummary;
+        }
+        File file = new File(SUMMARY_FILE);
+        if (!file.exists()) {
+            return null;
+        }
+
+        try (FileReader reader = new FileReader(SUMMARY_FILE)) {
+            return gson.fromJson(reader, ChainSummary.class);
+        } catch (IOException | JsonParseException e) {
+            System.err.println("Failed to load chain summary: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Opens the stored chain. Only the most recent blocks are read; older ones
+     * are loaded from the block store when accessed.
+     */
+    public BlockAccess load() {
+        if (blockStore.getHeight() >= 0) {
+            try {
+                BlockAccess chain = new CachedBlockAccess(blockStore);
+                System.out.println("Blockchain loaded from " + blockStore.getDirectory() + " (height "
+                        + (chain.size() - 1) + ")");
+                return chain;
+            } catch (RuntimeException e) {
+                System.err.println("Failed to load blockchain: " + e.getMessage());
+                return null;
+            }
+        }
+
         File file = new File(CHAIN_FILE);
         if (!file.exists()) {
             System.out.println("No existing blockchain found. Starting fresh.");
@@ -48,13 +510,37 @@ public class ChainStore {
             }.getType();
             List<Block> chain = gson.fromJson(reader, listType);
             System.out.println("Blockchain loaded from " + CHAIN_FILE);
-            return chain;
-        } catch (IOException e) {
+            if (chain == null || chain.isEmpty()) {
+                return null;
+            }
+            blockStore.sync(chain);
+            blockStore.force();
+            System.out.println("Migrated " + chain.size() + " blocks to " + blockStore.getDirectory());
+            return new CachedBlockAccess(blockStore);
+        } catch (IOException | RuntimeException e) {
             System.err.println("Failed to load blockchain: " + e.getMessage());
             return null;
         }
     }
 
+    /**
+     * Drops every stored block and returns an empty chain to build on.
+     */
+    public BlockAccess reset() {
+        flush();
+        synchronized (diskLock) {
+            if (blockStore.getHeight() >= 0) {
+                // Logged, so replaying older commits cannot bring the blocks back
+                CommitRecord record = new CommitRecord();
+                record.blocks = new ArrayList<>();
+                wal.commit(wal.append(RECORD_COMMIT,
+                        JsonUtil.getGson().toJson(record).getBytes(StandardCharsets.UTF_8)));
+                blockStore.truncate(-1);
+            }
+        }
+        return new CachedBlockAccess(blockStore);
+    }
+
     // Type Adapter for PublicKey
     private static class PublicKeyAdapter implements JsonSerializer<PublicKey>, JsonDeserializer<PublicKey> {
         @Override
@@ -0,0 +1,125 @@
+package com.nexis.storage;
+
+import java.util.Arrays;
+
+/**
+ * Compact block hash -> height table (open addressing, linear probing).
+ *
+ * Only the last 8 bytes of each hash are kept (the leading bytes of PoW hashes
+ * are mostly zeros), about 24 bytes per block instead of a String-keyed map
+ * entry. Two blocks sharing those 64 bits is not handled; callers that need
+ * certainty compare the full hash stored for the returned height.
+ */
+public class HashIndex {
+
+    private static final int EMPTY = -1;
+
+    private long[] keys;
+    private int[] heights;
+    private int size;
+
+    public HashIndex() {
+        allocate(1024);
+    }
+
+    public void put(String hash, int height) {
+        if ((size + 1) * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        long key = key(hash);
+        int slot = find(key);
+        if (heights[slot] == EMPTY) {
+            size++;
+        }
+        keys[slot] = key;
+        heights[slot] = height;
+    }
+
+    /**
+     * @return The height stored for this hash, or -1
+     */
+    public int get(String hash) {
+        if (hash == null || hash.length() < 16) {
+            return -1;
+        }
+        try {
+            return heights[find(key(hash))];
+        } catch (NumberFormatException e) {
+            return -1; // Not a hex hash
+        }
+    }
+
+    public void remove(String hash) {
+        int slot = find(key(hash));
+        if (heights[slot] == EMPTY) {
+            return;
+        }
+        heights[slot] = EMPTY;
+        size--;
+
+        // Shift later entries of the probe run back so lookups never stop early
+        int mask = keys.length - 1;
+        int next = (slot + 1) & mask;
+        while (heights[next] != EMPTY) {
+            int home = home(keys[next]);
+            // Move the entry unless its home lies cyclically in (slot, next]
+            boolean stays = slot <= next ? (home > slot && home <= next) : (home > slot || home <= next);
+            if (!stays) {
+                keys[slot] = keys[next];
+                heights[slot] = heights[next];
+                heights[next] = EMPTY;
+                slot = next;
+            }
+            next = (next + 1) & mask;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        allocate(1024);
+    }
+
+    // Slot holding key, or the empty slot where it would go
+    private int find(long key) {
+        int mask = keys.length - 1;
+        int slot = home(key);
+        while (heights[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private int home(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & (keys.length - 1);
+    }
+
+    private static long key(String hash) {
+        // Last 16 hex digits
+        return Long.parseUnsignedLong(hash.substring(hash.length() - 16), 16);
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldHeights = heights;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldHeights[i] != EMPTY) {
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                heights[slot] = oldHeights[i];
+                size++;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        heights = new int[capacity];
+        Arrays.fill(heights, EMPTY);
+        size = 0;
+    }
+}
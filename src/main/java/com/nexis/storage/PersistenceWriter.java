@@ -0,0 +1,195 @@
+package com.nexis.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * Runs disk writes on a dedicated thread so callers do not wait for them.
+ *
+ * Work is handed over through a bounded queue: when the writer falls behind
+ * and the queue is full, {@link #submit} blocks until there is room
+ * (backpressure), so memory held by queued work stays bounded. The writer
+ * takes everything queued at once and passes it to the handler as one batch,
+ * letting the handler share one fsync between them.
+ *
+ * Each submission gets a ticket; {@link #awaitDurable} waits until the batch
+ * holding that ticket has been handled, and {@link #flush} until everything
+ * submitted so far has.
+ *
+ * If the handler throws, the writer fails for good: later batches are dropped
+ * unwritten (they may depend on the one that failed), waiting for any ticket
+ * from the failed batch on rethrows the error, and {@link #submit} refuses new
+ * items.
+ */
+public class PersistenceWriter<T> {
+
+    private static class Entry<T> {
+        final long ticket;
+        final T item;
+
+        Entry(long ticket, T item) {
+            this.ticket = ticket;
+            this.item = item;
+        }
+    }
+
+    private final BlockingQueue<Entry<T>> queue;
+    private final Consumer<List<T>> handler;
+    private final Thread thread;
+
+    private long lastTicket; // Last submitted
+    private long completedTicket; // Last handled
+    private long batches;
+    private long items;
+    private long blockedSubmits; // Submits that found the queue full
+    private RuntimeException failure; // First handler error
+    private long failedTicket; // First ticket of the batch that failed
+
+    /**
+     * @param capacity Items that may wait before submitters block
+     * @param handler  Writes a batch, in submission order
+     */
+    public PersistenceWriter(String name, int capacity, Consumer<List<T>> handler) {
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.handler = handler;
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Queues an item, blocking while the queue is full. An interrupt does not
+     * abandon the item; the thread's interrupt status is set again once it is
+     * queued.
+     *
+     * @return Ticket to pass to {@link #awaitDurable}
+     * @throws RuntimeException If an earlier write failed
+     */
+    public long submit(T item) {
+        // Tickets are handed out in queue order
+        synchronized (queue) {
+            long ticket;
+            synchronized (this) {
+                checkFailed(lastTicket + 1);
+                ticket = ++lastTicket;
+            }
+            Entry<T> entry = new Entry<>(ticket, item);
+            if (!queue.offer(entry)) {
+                synchronized (this) {
+                    blockedSubmits++;
+                }
+                boolean interrupted = false;
+                while (true) {
+                    try {
+                        queue.put(entry);
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true; // The ticket is already handed out
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return ticket;
+        }
+    }
+
+    /**
+     * Waits until the item with this ticket (and every earlier one) is written.
+     *
+     * @throws RuntimeException If the write failed
+     */
+    public synchronized void awaitDurable(long ticket) {
+        while (completedTicket < ticket && failure == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        checkFailed(ticket);
+    }
+
+    /**
+     * Durability barrier: waits until everything submitted so far is written.
+     */
+    public void flush() {
+        long ticket;
+        synchronized (this) {
+            ticket = lastTicket;
+        }
+        awaitDurable(ticket);
+    }
+
+    public int getQueued() {
+        return queue.size();
+    }
+
+    public synchronized long getBatches() {
+        return batches;
+    }
+
+    public synchronized long getItems() {
+        return items;
+    }
+
+    public synchronized long getBlockedSubmits() {
+        return blockedSubmits;
+    }
+
+    /**
+     * @return The error that stopped the writer, or null
+     */
+    public synchronized RuntimeException getFailure() {
+        return failure;
+    }
+
+    // Caller holds this
+    private void checkFailed(long ticket) {
+        if (failure != null && ticket >= failedTicket) {
+            throw new RuntimeException("Background write failed: " + failure.getMessage(), failure);
+        }
+    }
+
+    private void run() {
+        List<Entry<T>> entries = new ArrayList<>();
+        while (true) {
+            try {
+                entries.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(entries);
+
+            List<T> batch = new ArrayList<>(entries.size());
+            for (Entry<T> entry : entries) {
+                batch.add(entry.item);
+            }
+            if (getFailure() == null) {
+                try {
+                    handler.accept(batch);
+                } catch (RuntimeException e) {
+                    System.err.println("Background write failed: " + e.getMessage()
+                            + ". No further writes are accepted.");
+                    synchronized (this) {
+                        failure = e;
+                        failedTicket = entries.get(0).ticket;
+                    }
+                }
+            }
+
+            synchronized (this) {
+                completedTicket = entries.get(entries.size() - 1).ticket;
+                batches++;
+                items += entries.size();
+                notifyAll();
+            }
+            entries.clear();
+        }
+    }
+}
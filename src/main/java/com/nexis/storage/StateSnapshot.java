@@ -0,0 +1,207 @@
+package com.nexis.storage;
+
+import com.nexis.core.Proposal;
+import com.nexis.core.SmartContract;
+import com.nexis.crypto.HashUtil;
+import com.nexis.utils.FileUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Chain state at a given block: balances, stakes, proposals, contracts and the
+ * supply counters. Restoring one and replaying the blocks after it replaces a
+ * replay of the whole chain on startup.
+ *
+ * Binary layout (big-endian):
+ *
+ * <pre>
+ * magic(4) version(4) height(4) tip hash(32)
+ * issued supply(8) total fees(8)
+ * balances:  count(4) { address, amount(8) }
+ * stakes:    count(4) { address, amount(8) }
+ * proposals: count(4) { id, description, proposer, end(8), executed(1), count(4) { voter, weight(8) } }
+ * contracts: count(4) { address, owner, script, state(4) }
+ * crc32(4) of everything before it
+ * </pre>
+ *
+ * Strings are length(4) + UTF-8 bytes, null written as length -1.
+ */
+public class StateSnapshot {
+
+    public static final int MAGIC = 0x4E585353; // "NXSS"
+    public static final int FORMAT_VERSION = 1;
+
+    public int height;
+    public String tipHash;
+    public double issuedSupply;
+    public double totalFees;
+    public Map<String, Double> balances = new HashMap<>();
+    public Map<String, Double> stakes = new HashMap<>();
+    public Map<String, Proposal> proposals = new HashMap<>();
+    public Map<String, SmartContract> contracts = new HashMap<>();
+
+    public byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(height);
+            out.write(HashUtil.hexToBytes(tipHash));
+            out.writeDouble(issuedSupply);
+            out.writeDouble(totalFees);
+            writeAmounts(out, balances);
+            writeAmounts(out, stakes);
+
+            out.writeInt(proposals.size());
+            for (Proposal p : proposals.values()) {
+                writeString(out, p.id);
+                writeString(out, p.description);
+                writeString(out, p.proposer);
+                out.writeLong(p.endTimestamp);
+                out.writeBoolean(p.executed);
+                writeAmounts(out, p.votes);
+            }
+
+            out.writeInt(contracts.size());
+            for (SmartContract c : contracts.values()) {
+                writeString(out, c.address);
+                writeString(out, c.owner);
+                writeString(out, c.script);
+                out.writeInt(c.state);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to encode state snapshot", e); // Not thrown by in-memory streams
+        }
+        byte[] body = bytes.toByteArray();
+        byte[] data = Arrays.copyOf(body, body.length + 4);
+        int crc = BlockStore.crc(body);
+        for (int i = 0; i < 4; i++) {
+            data[body.length + i] = (byte) (crc >>> (24 - 8 * i));
+        }
+        return data;
+    }
+
+    public static StateSnapshot decode(byte[] data) {
+        if (data.length < 4) {
+            throw new RuntimeException("State snapshot is truncated");
+        }
+        byte[] body = Arrays.copyOf(data, data.length - 4);
+        int crc = ((data[data.length - 4] & 0xFF) << 24) | ((data[data.length - 3] & 0xFF) << 16)
+                | ((data[data.length - 2] & 0xFF) << 8) | (data[data.length - 1] & 0xFF);
+        if (BlockStore.crc(body) != crc) {
+            throw new RuntimeException("State snapshot checksum mismatch");
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(body))) {
+            if (in.readInt() != MAGIC) {
+                throw new RuntimeException("Not a state snapshot");
+            }
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new RuntimeException("Unsupported state snapshot version " + version);
+            }
+            StateSnapshot snapshot = new StateSnapshot();
+            snapshot.height = in.readInt();
+            byte[] hash = new byte[32];
+            in.readFully(hash);
+            snapshot.tipHash = HashUtil.bytesToHex(hash);
+            snapshot.issuedSupply = in.readDouble();
+            snapshot.totalFees = in.readDouble();
+            snapshot.balances = readAmounts(in);
+            snapshot.stakes = readAmounts(in);
+
+            int proposals = in.readInt();
+            for (int i = 0; i < proposals; i++) {
+                Proposal p = new Proposal(readString(in), readString(in), readString(in), 0);
+                p.endTimestamp = in.readLong();
+                p.executed = in.readBoolean();
+                p.votes = readAmounts(in);
+                snapshot.proposals.put(p.id, p);
+            }
+
+            int contracts = in.readInt();
+            for (int i = 0; i < contracts; i++) {
+                SmartContract c = new SmartContract(readString(in), readString(in), readString(in));
+                c.state = in.readInt();
+                snapshot.contracts.put(c.address, c);
+            }
+            return snapshot;
+        } catch (IOException e) {
+            throw new RuntimeException("State snapshot is truncated", e);
+        }
+    }
+
+    /**
+     * Replaces the snapshot file atomically.
+     */
+    public static void write(File file, byte[] data) {
+        try {
+            FileUtil.writeAtomically(file, data);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write state snapshot " + file, e);
+        }
+    }
+
+    /**
+     * @return The snapshot in this file, or null if there is none or it cannot
+     *         be used
+     */
+    public static StateSnapshot read(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            return decode(Files.readAllBytes(file.toPath()));
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring state snapshot " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void writeAmounts(DataOutputStream out, Map<String, Double> amounts) throws IOException {
+        out.writeInt(amounts.size());
+        for (Map.Entry<String, Double> entry : amounts.entrySet()) {
+            writeString(out, entry.getKey());
+            out.writeDouble(entry.getValue());
+        }
+    }
+
+    private static Map<String, Double> readAmounts(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Map<String, Double> amounts = new HashMap<>(Math.max(16, count * 2));
+        for (int i = 0; i < count; i++) {
+            amounts.put(readString(in), in.readDouble());
+        }
+        return amounts;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,460 @@
+package com.nexis.storage;
+
+import com.nexis.core.Block;
+import com.nexis.core.Transaction;
+import com.nexis.utils.BloomFilter;
+import com.nexis.utils.FileUtil;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent txId -> (block height, position) index, fronted by a Bloom filter.
+ *
+ * The backing file is an append-only log of block records:
+ *
+ * <pre>
+ * B &lt;height&gt; &lt;blockHash&gt;   block committed at height
+ * T &lt;txId&gt; &lt;position&gt;       transaction of the preceding block
+ * U &lt;height&gt;               blocks at and above height were unwound
+ * </pre>
+ *
+ * Whenever a state snapshot is taken, the whole index at that tip is written
+ * to a checkpoint file ({@code C <height> <blockHash>}, then one
+ * {@code T <txId> <height> <position>} line per transaction) and the log
+ * starts over with the same {@code C} line, so a start reads the checkpoint
+ * and replays only the blocks after it. A log that does not begin with the
+ * checkpoint's line predates it (a crash between the two writes) and is
+ * ignored.
+ *
+ * Lookups are answered from memory. Records of newly (un)indexed blocks are
+ * held until {@link ChainStore#save} hands them to its writer thread with the
+ * blocks they describe, so the caller never waits for the file. The log may
+ * therefore lag the chain after a crash (the missing blocks are indexed again
+ * on load) or, if the block store lost its unsynced tail, run ahead of it; it
+ * is then cut back to the recovered chain rather than rebuilt.
+ *
+ * On a pruned node only blocks from the first full height on are indexed;
+ * records of older blocks are dropped from the log when it is loaded.
+ */
+public class TransactionIndex {
+
+    private static final String INDEX_FILE = "nexis_txindex.dat";
+    private static final int AVG_TX_PER_BLOCK = 4;
+    private static final int MIN_BLOOM_CAPACITY = 1024;
+    private static final double BLOOM_FP_RATE = 0.01;
+
+    public static class Location {
+        public final int height;
+        public final int position;
+
+        public Location(int height, int position) {
+            this.height = height;
+            this.position = position;
+        }
+    }
+
+    /**
+     * The index at a given tip, to be written by {@link #writeCheckpoint}.
+     */
+    public static class Checkpoint {
+        final int height;
+        final String hash;
+        final Map<String, Location> locations;
+
+        Checkpoint(int height, String hash, Map<String, Location> locations) {
+            this.height = height;
+            this.hash = hash;
+            this.locations = locations;
+        }
+
+        String header() {
+            return "C " + height + " " + hash;
+        }
+    }
+
+    private final String indexFile;
+    private final String checkpointFile;
+    private final Map<String, Location> locations = new ConcurrentHashMap<>();
+    private BloomFilter bloom;
+    private final StringBuilder pending = new StringBuilder(); // Records not yet handed to the writer
+    private final Object fileLock = new Object();
+
+    public TransactionIndex() {
+        this(INDEX_FILE);
+    }
+
+    public TransactionIndex(String indexFile) {
+        this.indexFile = indexFile;
+        this.checkpointFile = indexFile + ".checkpoint";
+        this.bloom = new BloomFilter(MIN_BLOOM_CAPACITY, BLOOM_FP_RATE);
+    }
+
+    /**
+     * Loads the persisted index and reconciles it with the given chain. If the
+     * file disagrees with the chain it is rebuilt from the blocks.
+     */
+    public void load(List<Block> chain) {
+        load(chain, 0);
+    }
+
+    /**
+     * @param firstHeight Lowest height whose block can be read from
+     *                    {@code chain} (blocks below it were pruned)
+     */
+    public synchronized void load(List<Block> chain, int firstHeight) {
+        locations.clear();
+        pending.setLength(0);
+        int indexedTip = readIndexFile(chain, firstHeight, readCheckpoint());
+
+        if (indexedTip < -1) {
+            System.out.println("Transaction index out of sync with chain. Rebuilding...");
+            locations.clear();
+            synchronized (fileLock) {
+                new File(checkpointFile).delete();
+                new File(indexFile).delete();
+            }
+            indexedTip = -1;
+        }
+        for (int h = Math.max(indexedTip + 1, firstHeight); h < chain.size(); h++) {
+            indexBlock(chain.get(h));
+        }
+        resizeBloom(chain.size() - firstHeight);
+        write(takePending());
+    }
+
+    public synchronized void indexBlock(Block block) {
+        StringBuilder record = new StringBuilder();
+        record.append("B ").append(block.index).append(' ').append(block.hash).append('\n');
+        for (int i = 0; i < block.transactions.size(); i++) {
+            String txId = block.transactions.get(i).transactionId;
+            locations.put(txId, new Location(block.index, i));
+            bloom.add(txId);
+            record.append("T ").append(txId).append(' ').append(i).append('\n');
+        }
+        pending.append(record);
+
+        if (bloom.isSaturated()) {
+            resizeBloom(block.index + 1);
+        }
+    }
+
+    /**
+     * Removes a block's transactions after it was rolled back. The Bloom filter
+     * keeps the stale bits; they only cost an extra map lookup.
+     */
+    public synchronized void unindexBlock(Block block) {
+        for (Transaction tx : block.transactions) {
+            Location loc = locations.get(tx.transactionId);
+            if (loc != null && loc.height == block.index) {
+                locations.remove(tx.transactionId);
+            }
+        }
+        pending.append("U ").append(block.index).append('\n');
+    }
+
+    /**
+     * @return What {@link #takePending} would return, without clearing it
+     */
+    public synchronized String getPending() {
+        return pending.toString();
+    }
+
+    /**
+     * @return Log records of the blocks (un)indexed since the previous call,
+     *         to be passed to {@link #write} once those blocks are stored
+     */
+    public synchronized String takePending() {
+        String records = pending.toString();
+        pending.setLength(0);
+        return records;
+    }
+
+    /**
+     * Appends records to the log file. Lookups do not wait for it.
+     */
+    public void write(String records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        synchronized (fileLock) {
+            try (Writer writer = new FileWriter(indexFile, true)) {
+                writer.write(records);
+            } catch (IOException e) {
+                System.err.println("Failed to write transaction index: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Copies the index for a checkpoint. The caller must hold the chain lock,
+     * with every block up to {@code height} (and none above) indexed.
+     */
+    public Checkpoint checkpoint(int height, String hash) {
+        return new Checkpoint(height, hash, new HashMap<>(locations));
+    }
+
+    /**
+     * Stores a checkpoint and starts the log over after it. Records of later
+     * blocks must be written after this.
+     */
+    public void writeCheckpoint(Checkpoint checkpoint) {
+        StringBuilder out = new StringBuilder(checkpoint.header()).append('\n');
+        for (Map.Entry<String, Location> entry : checkpoint.locations.entrySet()) {
+            Location loc = entry.getValue();
+            out.append("T ").append(entry.getKey()).append(' ').append(loc.height).append(' ')
+                    .append(loc.position).append('\n');
+        }
+        synchronized (fileLock) {
+            try {
+                FileUtil.writeAtomically(new File(checkpointFile), out.toString());
+                FileUtil.writeAtomically(new File(indexFile), checkpoint.header() + "\n");
+            } catch (IOException e) {
+                System.err.println("Failed to checkpoint transaction index: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes the pending records straight away.
+     */
+    public void flush() {
+        write(takePending());
+    }
+
+    /**
+     * Forgets the transactions of blocks below {@code height} after they were
+     * pruned. Their log records go when the index is next loaded.
+     */
+    public synchronized void prune(int height) {
+        locations.values().removeIf(loc -> loc.height < height);
+    }
+
+    public synchronized boolean contains(String txId) {
+        // Negative answers never touch the index itself
+        if (!bloom.mightContain(txId)) {
+            return false;
+        }
+        return locations.containsKey(txId);
+    }
+
+    public synchronized Location find(String txId) {
+        if (!bloom.mightContain(txId)) {
+            return null;
+        }
+        return locations.get(txId);
+    }
+
+    public int size() {
+        return locations.size();
+    }
+
+    // Size the filter from chain height, never below what is already indexed
+    private void resizeBloom(int chainHeight) {
+        int expected = Math.max(MIN_BLOOM_CAPACITY,
+                Math.max(chainHeight * AVG_TX_PER_BLOCK, locations.size()) * 2);
+        BloomFilter resized = new BloomFilter(expected, BLOOM_FP_RATE);
+        for (String txId : locations.keySet()) {
+            resized.add(txId);
+        }
+        this.bloom = resized;
+    }
+
+    // The stored checkpoint, or null if there is none (or it is damaged)
+    private Checkpoint readCheckpoint() {
+        File file = new File(checkpointFile);
+        if (!file.exists()) {
+            return null;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String[] header = reader.readLine().split(" ");
+            if (!header[0].equals("C")) {
+                throw new IOException("Missing checkpoint header");
+            }
+            Map<String, Location> entries = new HashMap<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(" ");
+                entries.put(parts[1], new Location(Integer.parseInt(parts[2]), Integer.parseInt(parts[3])));
+            }
+            return new Checkpoint(Integer.parseInt(header[1]), header[2], entries);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Failed to load transaction index checkpoint: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Loads the checkpoint, if any, and replays the index log after it into
+     * memory.
+     *
+     * @return height of the last indexed block, -1 for an empty index, or -2 if
+     *         the files do not match the chain
+     */
+    private int readIndexFile(List<Block> chain, int firstHeight, Checkpoint checkpoint) {
+        File file = new File(indexFile);
+        if (!file.exists() && checkpoint == null) {
+            return -1;
+        }
+
+        // Block hashes recorded by the log; unwound heights are dropped again.
+        // Blocks up to a checkpoint are vouched for by its tip alone.
+        TreeMap<Integer, String> recorded = new TreeMap<>();
+        // Loaded IDs by block height, so an unwind only visits the blocks it drops
+        TreeMap<Integer, List<String>> loaded = new TreeMap<>();
+        int currentHeight = -1;
+        boolean restartLog = false;
+        if (checkpoint != null) {
+            recorded.put(checkpoint.height, checkpoint.hash);
+            for (Map.Entry<String, Location> entry : checkpoint.locations.entrySet()) {
+                if (entry.getValue().height >= firstHeight) {
+                    locations.put(entry.getKey(), entry.getValue());
+                    loaded.computeIfAbsent(entry.getValue().height, h -> new ArrayList<>()).add(entry.getKey());
+                }
+            }
+            currentHeight = checkpoint.height;
+        }
+        if (checkpoint != null && checkpoint.height < firstHeight) {
+            return -2; // Its tip was pruned, so it cannot be checked
+        }
+        if (!file.exists()) {
+            restartLog = true; // Lost after the checkpoint was written
+        } else {
+            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+                String line = reader.readLine();
+                if (checkpoint != null) {
+                    if (checkpoint.header().equals(line)) {
+                        line = reader.readLine();
+                    } else {
+                        System.out.println("Transaction index log predates its checkpoint. Ignoring it.");
+                        line = null;
+                        restartLog = true;
+                    }
+                }
+                for (; line != null; line = reader.readLine()) {
+                    String[] parts = line.split(" ");
+                    switch (parts[0]) {
+                        case "B":
+                            currentHeight = Integer.parseInt(parts[1]);
+                            recorded.put(currentHeight, parts[2]);
+                            break;
+                        case "T":
+                            if (currentHeight < firstHeight) {
+                                break; // Block pruned
+                            }
+                            locations.put(parts[1], new Location(currentHeight, Integer.parseInt(parts[2])));
+                            loaded.computeIfAbsent(currentHeight, h -> new ArrayList<>()).add(parts[1]);
+                            break;
+                        case "U":
+                            int unwound = Integer.parseInt(parts[1]);
+                            recorded.tailMap(unwound).clear();
+                            SortedMap<Integer, List<String>> dropped = loaded.tailMap(unwound);
+                            for (List<String> txIds : dropped.values()) {
+                                for (String txId : txIds) {
+                                    Location loc = locations.get(txId);
+                                    if (loc != null && loc.height >= unwound) {
+                                        locations.remove(txId);
+                                    }
+                                }
+                            }
+                            dropped.clear();
+                            currentHeight = unwound - 1;
+                            break;
+                        default:
+                            return -2;
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Failed to load transaction index: " + e.getMessage());
+                return -2;
+            }
+        }
+
+        // Surviving records must be contiguous from genesis (or from a pruned
+        // height, or the checkpoint; earlier blocks cannot be compared). From
+        // the first one the chain does not hold, the log ran ahead of the
+        // recovered store.
+        int expected = recorded.isEmpty() ? 0 : recorded.firstKey();
+        if (expected > firstHeight && (checkpoint == null || expected != checkpoint.height)) {
+            return -2;
+        }
+        int divergent = -1;
+        for (Map.Entry<Integer, String> entry : recorded.entrySet()) {
+            int height = entry.getKey();
+            if (height != expected) {
+                return -2;
+            }
+            if (height >= chain.size()
+                    || height >= firstHeight && !chain.get(height).hash.equals(entry.getValue())) {
+                divergent = height;
+                break;
+            }
+            expected++;
+        }
+        if (checkpoint != null && divergent >= 0 && divergent <= checkpoint.height) {
+            return -2; // The chain left the checkpoint's branch
+        }
+        if (divergent >= Math.max(firstHeight, 1)) {
+            int from = divergent;
+            System.out.println("Transaction index ahead of the chain. Dropping its records from height " + from);
+            recorded.tailMap(from).clear();
+            locations.values().removeIf(loc -> loc.height >= from);
+        } else if (divergent >= 0) {
+            return -2; // Nothing left to keep
+        }
+        if (restartLog) {
+            rewrite(null, checkpoint.header() + "\n");
+        } else if (!recorded.isEmpty() && recorded.firstKey() < firstHeight) {
+            compact(recorded.tailMap(firstHeight));
+        } else if (divergent >= 0) {
+            write("U " + divergent + "\n");
+        }
+        return expected - 1;
+    }
+
+    // Rewrites the log with only the given blocks' records. They cover every
+    // block that is still indexed, so a checkpoint is no longer needed.
+    private void compact(SortedMap<Integer, String> blocks) {
+        Map<Integer, StringBuilder> records = new TreeMap<>();
+        for (Map.Entry<Integer, String> block : blocks.entrySet()) {
+            records.put(block.getKey(), new StringBuilder()
+                    .append("B ").append(block.getKey()).append(' ').append(block.getValue()).append('\n'));
+        }
+        for (Map.Entry<String, Location> entry : locations.entrySet()) {
+            StringBuilder record = records.get(entry.getValue().height);
+            if (record != null) {
+                record.append("T ").append(entry.getKey()).append(' ').append(entry.getValue().position).append('\n');
+            }
+        }
+        StringBuilder log = new StringBuilder();
+        for (StringBuilder record : records.values()) {
+            log.append(record);
+        }
+        rewrite(checkpointFile, log.toString());
+    }
+
+    // Replaces the log, first deleting the checkpoint file if given
+    private void rewrite(String obsolete, String log) {
+        synchronized (fileLock) {
+            if (obsolete != null) {
+                new File(obsolete).delete(); // A log without its header would otherwise be ignored
+            }
+            try {
+                FileUtil.writeAtomically(new File(indexFile), log);
+            } catch (IOException e) {
+                System.err.println("Failed to rewrite transaction index: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package com.nexis.storage;
+
+import com.nexis.core.NetworkConfig;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-ahead log for chain commits and the state derived from them.
+ *
+ * The file starts with a 16-byte header (magic, format version, sequence
+ * number of the first record) followed by records:
+ *
+ * <pre>
+ * length(4) crc32(4) sequence(8) type(1) payload (length - 9 bytes)
+ * </pre>
+ *
+ * Records are buffered by {@link #append} and written by {@link #commit}.
+ * Commits use group commit: whichever thread syncs first writes and forces
+ * every record appended so far, and the threads waiting behind it find their
+ * records already durable. How often the file is forced is set by the
+ * {@link FsyncPolicy}.
+ *
+ * Once the owners have written their state elsewhere (a checkpoint), the log
+ * is {@link #reset} to an empty file, so recovery only replays the records
+ * written since the last checkpoint. A record cut short by a crash ends the
+ * log and is truncated on open.
+ */
+public class WriteAheadLog {
+
+    public static final int MAGIC = 0x4E58574C; // "NXWL"
+    public static final int FORMAT_VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+
+    public enum FsyncPolicy {
+        ALWAYS, // Every commit waits until its records are forced to disk
+        INTERVAL, // Forced in the background every fsync interval; a crash loses at most that much
+        NEVER; // Left to the OS (forced only on checkpoints and close)
+
+        public static FsyncPolicy parse(String name) {
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (RuntimeException e) {
+                throw new RuntimeException("Unknown fsync policy: " + name);
+            }
+        }
+    }
+
+    /**
+     * A record read back from the log.
+     */
+    public static class Record {
+        public final long sequence;
+        public final byte type;
+        public final byte[] payload;
+
+        public Record(long sequence, byte type, byte[] payload) {
+            this.sequence = sequence;
+            this.type = type;
+            this.payload = payload;
+        }
+    }
+
+    private final File file;
+    private final FsyncPolicy policy;
+    private final long groupCommitMillis;
+    private final Object flushLock = new Object(); // Held by the thread writing a batch
+    private ScheduledExecutorService syncer;
+
+    private RandomAccessFile raf;
+    private List<Record> recovered = new ArrayList<>();
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private long lastSequence; // Last appended
+    private volatile long writtenSequence; // Last handed to the OS
+    private volatile long durableSequence; // Last forced to disk
+    private volatile long fileSize;
+    private long commits;
+    private long syncs;
+
+    public WriteAheadLog(File file) {
+        this(file, FsyncPolicy.parse(NetworkConfig.getInstance().getWalFsyncPolicy()),
+                NetworkConfig.getInstance().getWalGroupCommitMillis(),
+                NetworkConfig.getInstance().getWalFsyncIntervalMillis());
+    }
+
+    /**
+     * Opens (or creates) the log and reads back the records it holds.
+     *
+     * @param groupCommitMillis How long a syncing commit waits for others to
+     *                          join its batch (0 to sync at once)
+     */
+    public WriteAheadLog(File file, FsyncPolicy policy, long groupCommitMillis, long fsyncIntervalMillis) {
+        this.file = file;
+        this.policy = policy;
+        this.groupCommitMillis = groupCommitMillis;
+        try {
+            open();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open write-ahead log " + file, e);
+        }
+
+        if (policy == FsyncPolicy.INTERVAL) {
+            syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "wal-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            syncer.scheduleWithFixedDelay(this::syncQuietly, fsyncIntervalMillis, fsyncIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public FsyncPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return The records found on open, i.e. written since the last checkpoint
+     */
+    public synchronized List<Record> getRecovered() {
+        return new ArrayList<>(recovered);
+    }
+
+    /**
+     * Buffers a record. It is not written until the next commit.
+     *
+     * @return The record's sequence number, to pass to {@link #commit}
+     */
+    public synchronized long append(byte type, byte[] payload) {
+        long sequence = ++lastSequence;
+        ByteBuffer body = ByteBuffer.allocate(9 + payload.length);
+        body.putLong(sequence).put(type).put(payload);
+        ByteBuffer header = ByteBuffer.allocate(8);
+        header.putInt(body.capacity()).putInt(BlockStore.crc(body.array()));
+        pending.writeBytes(header.array());
+        pending.writeBytes(body.array());
+        return sequence;
+    }
+
+    /**
+     * Makes every record up to {@code sequence} as durable as the fsync policy
+     * asks for. With {@link FsyncPolicy#ALWAYS} this returns once they are on
+     * disk, usually sharing one fsync with concurrent commits.
+     */
+    public void commit(long sequence) {
+        synchronized (this) {
+            commits++;
+        }
+        flush(sequence, policy == FsyncPolicy.ALWAYS);
+    }
+
+    /**
+     * Writes and forces everything appended so far.
+     */
+    public void sync() {
+        long sequence;
+        synchronized (this) {
+            sequence = lastSequence;
+        }
+        flush(sequence, true);
+    }
+
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    public long getDurableSequence() {
+        return durableSequence;
+    }
+
+    /**
+     * @return Bytes in the log file (records not yet committed excluded)
+     */
+    public long size() {
+        return fileSize;
+    }
+
+    public synchronized long getCommits() {
+        return commits;
+    }
+
+    public synchronized long getSyncs() {
+        return syncs;
+    }
+
+    /**
+     * Empties the log after a checkpoint. Sequence numbers carry on from the
+     * last record, and the empty log replaces the old one atomically.
+     */
+    public void reset() {
+        synchronized (flushLock) {
+            synchronized (this) {
+                try {
+                    writePending(true);
+                    File tmp = new File(file.getPath() + ".tmp");
+                    try (RandomAccessFile out = new RandomAccessFile(tmp, "rw")) {
+                        out.setLength(0);
+                        writeHeader(out, lastSequence + 1);
+                        out.getChannel().force(false);
+                    }
+                    raf.close();
+                    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                    raf = new RandomAccessFile(file, "rw");
+                    raf.seek(raf.length());
+                    fileSize = raf.length();
+                    recovered = new ArrayList<>();
+                } catch (IOException e) {
+                    throw new RuntimeException("Failed to reset write-ahead log", e);
+                }
+            }
+        }
+    }
+
+    public void close() {
+        if (syncer != null) {
+            syncer.shutdownNow();
+        }
+        synchronized (flushLock) {
+            synchronized (this) {
+                try {
+                    writePending(true);
+                    raf.close();
+                } catch (IOException e) {
+                    System.err.println("Failed to close write-ahead log: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void flush(long sequence, boolean force) {
+        synchronized (flushLock) {
+            if ((force ? durableSequence : writtenSequence) >= sequence) {
+                return; // Covered by an earlier batch
+            }
+            if (force && groupCommitMillis > 0) {
+                try {
+                    Thread.sleep(groupCommitMillis); // Let concurrent commits join this batch
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            try {
+                writePending(force);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to write to write-ahead log", e);
+            }
+        }
+    }
+
+    // Caller holds flushLock; the buffer is swapped under this object's lock
+    private void writePending(boolean force) throws IOException {
+        byte[] batch;
+        long upTo;
+        synchronized (this) {
+            batch = pending.toByteArray();
+            pending = new ByteArrayOutputStream();
+            upTo = lastSequence;
+        }
+        if (batch.length > 0) {
+            raf.write(batch);
+            fileSize += batch.length;
+        }
+        writtenSequence = upTo;
+        if (force && durableSequence < upTo) {
+            raf.getChannel().force(false);
+            durableSequence = upTo;
+            synchronized (this) {
+                syncs++;
+            }
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (RuntimeException e) {
+            System.err.println("Write-ahead log sync failed: " + e.getMessage());
+        }
+    }
+
+    private void open() throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        raf = new RandomAccessFile(file, "rw");
+        if (raf.length() < HEADER_SIZE || raf.readInt() != MAGIC) {
+            if (raf.length() > 0) {
+                System.err.println("Write-ahead log " + file + " has no valid header. Starting a new log.");
+            }
+            raf.setLength(0);
+            writeHeader(raf, 1);
+            raf.getChannel().force(false);
+            lastSequence = 0;
+        } else {
+            int version = raf.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported write-ahead log version " + version);
+            }
+            lastSequence = raf.readLong() - 1;
+            long end = readRecords(raf.getChannel());
+            if (end < raf.length()) {
+                System.err.println("Write-ahead log: dropped " + (raf.length() - end)
+                        + " byte(s) of an incomplete record");
+                raf.setLength(end);
+            }
+        }
+        raf.seek(raf.length());
+        fileSize = raf.length();
+        writtenSequence = lastSequence;
+        durableSequence = lastSequence;
+    }
+
+    // Reads records until the end or the first damaged one; returns where it stopped
+    private long readRecords(FileChannel channel) throws IOException {
+        long position = HEADER_SIZE;
+        long length = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(8);
+        while (position + 8 <= length) {
+            header.clear();
+            channel.read(header, position);
+            header.flip();
+            int size = header.getInt();
+            int crc = header.getInt();
+            if (size < 9 || position + 8 + size > length) {
+                break;
+            }
+            ByteBuffer body = ByteBuffer.allocate(size);
+            while (body.hasRemaining() && channel.read(body, position + 8 + body.position()) > 0) {
+                // Keep reading
+            }
+            if (body.hasRemaining() || BlockStore.crc(body.array()) != crc) {
+                break;
+            }
+            body.flip();
+            long sequence = body.getLong();
+            byte type = body.get();
+            byte[] payload = Arrays.copyOfRange(body.array(), 9, size);
+            if (sequence != lastSequence + 1) {
+                break; // Not the record that belongs here
+            }
+            recovered.add(new Record(sequence, type, payload));
+            lastSequence = sequence;
+            position += 8 + size;
+        }
+        return position;
+    }
+
+    private static void writeHeader(RandomAccessFile out, long firstSequence) throws IOException {
+        out.seek(0);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(firstSequence);
+    }
+}
@@ -0,0 +1,81 @@
+package com.nexis.utils;
+
+/**
+ * Fixed-size Bloom filter for string keys.
+ *
+ * Answers "definitely absent" without false negatives; "maybe present" answers
+ * must be confirmed against the real index.
+ */
+public class BloomFilter {
+
+    private final long[] bits;
+    private final int bitCount;
+    private final int hashCount;
+    private final int capacity;
+    private int insertions;
+
+    /**
+     * @param expectedInsertions Number of keys the filter is sized for
+     * @param falsePositiveRate  Target false positive rate at that size (e.g. 0.01)
+     */
+    public BloomFilter(int expectedInsertions, double falsePositiveRate) {
+        this.capacity = Math.max(1, expectedInsertions);
+        long m = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bitCount = (int) Math.max(64, Math.min(m, Integer.MAX_VALUE - 63));
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+        this.bits = new long[(bitCount + 63) >>> 6];
+    }
+
+    public void add(String key) {
+        long h1 = mix(key.hashCode());
+        long h2 = secondaryHash(key);
+        for (int i = 0; i < hashCount; i++) {
+            int bit = (int) Math.floorMod(h1 + i * h2, (long) bitCount);
+            bits[bit >>> 6] |= 1L << bit;
+        }
+        insertions++;
+    }
+
+    public boolean mightContain(String key) {
+        long h1 = mix(key.hashCode());
+        long h2 = secondaryHash(key);
+        for (int i = 0; i < hashCount; i++) {
+            int bit = (int) Math.floorMod(h1 + i * h2, (long) bitCount);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * True once more keys were added than the filter was sized for.
+     */
+    public boolean isSaturated() {
+        return insertions > capacity;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // Murmur3 finalizer
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    // FNV-1a over the characters, forced odd so probes never collapse
+    private static long secondaryHash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return mix(h) | 1L;
+    }
+}
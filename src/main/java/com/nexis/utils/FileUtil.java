@@ -0,0 +1,30 @@
+package com.nexis.utils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+public class FileUtil {
+
+    /**
+     * Replaces the file's contents so that a crash leaves either the old or the
+     * new version: the data is written and forced to a temporary file, which is
+     * then renamed over the target.
+     */
+    public static void writeAtomically(File file, byte[] data) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(data);
+            out.getFD().sync();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static void writeAtomically(File file, String text) throws IOException {
+        writeAtomically(file, text.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -4,13 +4,24 @@ import com.google.gson.*;
 import com.nexis.crypto.KeyPairUtil;
 import java.lang.reflect.Type;
 import java.security.PublicKey;
+import java.util.List;
 
 public class JsonUtil {
 
+    // Gson instances are thread-safe, so one shared instance serves every caller
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeHierarchyAdapter(PublicKey.class, new PublicKeyAdapter())
+            .create();
+
     public static Gson getGson() {
-        return new GsonBuilder()
-                .registerTypeHierarchyAdapter(PublicKey.class, new PublicKeyAdapter())
-                .create();
+        return GSON;
+    }
+
+    /**
+     * Joins already serialized JSON values into a JSON array.
+     */
+    public static String toJsonArray(List<String> elements) {
+        return "[" + String.join(",", elements) + "]";
     }
 
     private static class PublicKeyAdapter implements JsonSerializer<PublicKey>, JsonDeserializer<PublicKey> {
@@ -0,0 +1,72 @@
+package com.nexis.consensus;
+
+import com.nexis.core.Block;
+import com.nexis.core.Transaction;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MinerTest {
+
+    private Block newBlock(int version) {
+        List<Transaction> txs = new ArrayList<>();
+        Transaction coinbase = new Transaction(null, "miner", 50.0, 0);
+        coinbase.timeStamp = 1737180000000L;
+        coinbase.transactionId = coinbase.calculateHash();
+        txs.add(coinbase);
+        Block block = new Block(1, "0".repeat(64), txs, 0, 50.0);
+        block.timestamp = 1737180000000L;
+        block.version = version;
+        block.difficultyBits = 12;
+        return block;
+    }
+
+    @Test
+    public void testSameNonceAsSequentialSearchForAnyThreadCount() {
+        for (int version : new int[] { Block.LEGACY_VERSION, Block.BINARY_HEADER_VERSION }) {
+            // Reference: one nonce at a time, comparing the hex hash
+            Block reference = newBlock(version);
+            reference.hash = reference.calculateHash();
+            while (!reference.hash.startsWith("000")) {
+                reference.nonce++;
+                reference.hash = reference.calculateHash();
+            }
+
+            for (int threads : new int[] { 1, 3, 8 }) {
+                Block block = newBlock(version);
+                Miner.getInstance().mine(block, 3, threads);
+                assertEquals(reference.nonce, block.nonce, "version=" + version + " threads=" + threads);
+                assertEquals(reference.hash, block.hash);
+            }
+        }
+    }
+
+    @Test
+    public void testLeadingZeroBits() {
+        byte[] hash = new byte[32];
+        hash[2] = 0x0f; // 20 leading zero bits
+        assertTrue(ProofOfWork.hasLeadingZeroBits(hash, 16));
+        assertTrue(ProofOfWork.hasLeadingZeroBits(hash, 20));
+        assertFalse(ProofOfWork.hasLeadingZeroBits(hash, 21));
+        assertFalse(ProofOfWork.hasLeadingZeroBits(hash, 24));
+    }
+
+    @Test
+    public void testCancelStopsSearch() throws Exception {
+        Block block = newBlock(Block.BINARY_HEADER_VERSION);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        // 16 hex zeros: practically never found
+        CompletableFuture<Boolean> result = CompletableFuture
+                .supplyAsync(() -> Miner.getInstance().mine(block, 16, 2, cancelled));
+
+        Thread.sleep(100);
+        cancelled.set(true);
+        assertFalse(result.get(5, TimeUnit.SECONDS));
+    }
+}
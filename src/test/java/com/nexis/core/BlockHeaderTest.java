@@ -0,0 +1,67 @@
+package com.nexis.core;
+
+import com.nexis.crypto.HashUtil;
+import com.nexis.utils.JsonUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BlockHeaderTest {
+
+    private List<Transaction> payouts(int count) {
+        List<Transaction> txs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            txs.add(new Transaction(null, "miner-" + i, 1.0 + i, 0));
+        }
+        return txs;
+    }
+
+    @Test
+    public void testHeaderRoundTripAndHash() {
+        Block block = new Block(7, HashUtil.applySha256("parent"), payouts(3), 0.5, 50.0);
+        block.nonce = 12345;
+        block.hash = block.calculateHash();
+
+        byte[] bytes = block.getHeader().toBytes();
+        assertEquals(BlockHeader.SIZE, bytes.length);
+
+        BlockHeader decoded = BlockHeader.fromBytes(bytes);
+        assertEquals(block.previousHash, decoded.previousHash);
+        assertEquals(block.merkleRoot, decoded.merkleRoot);
+        assertEquals(12345, decoded.nonce);
+        assertEquals(block.hash, decoded.calculateHash());
+
+        // A stored block keeps its hash after a JSON round trip
+        Block copy = JsonUtil.getGson().fromJson(JsonUtil.getGson().toJson(block), Block.class);
+        assertEquals(block.hash, copy.calculateHash());
+    }
+
+    @Test
+    public void testHashIndependentOfBodyButMerkleRootIsNot() {
+        List<Transaction> txs = payouts(5);
+        Block block = new Block(1, HashUtil.applySha256("parent"), txs, 0, 50.0);
+        String hash = block.calculateHash();
+        String root = block.merkleRoot;
+
+        txs.get(4).value = 99; // Tamper with the body
+        txs.get(4).transactionId = txs.get(4).calculateHash();
+        assertEquals(hash, block.calculateHash());
+        assertNotEquals(root, MerkleTree.computeRoot(txs));
+    }
+
+    @Test
+    public void testMerkleRootOfOddCountDuplicatesLastLeaf() {
+        List<Transaction> three = payouts(3);
+        List<Transaction> four = new ArrayList<>(three);
+        four.add(three.get(2));
+        assertEquals(MerkleTree.computeRoot(four), MerkleTree.computeRoot(three));
+        assertEquals("0".repeat(64), MerkleTree.computeRoot(new ArrayList<>()));
+
+        // So the padded body must be told apart by its repeated transaction
+        assertFalse(MerkleTree.hasDuplicateIds(three));
+        assertTrue(MerkleTree.hasDuplicateIds(four));
+    }
+}
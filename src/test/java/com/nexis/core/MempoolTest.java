@@ -0,0 +1,229 @@
+package com.nexis.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MempoolTest {
+
+    private static final int THREADS = 32;
+    private static final AtomicInteger counter = new AtomicInteger();
+
+    // Unsigned transfer with a unique ID; the mempool itself does not verify signatures.
+    // Fixed-width timestamps keep the concatenated hash input unambiguous.
+    private static Transaction transfer(String from, double value, double fee) {
+        Transaction tx = new Transaction(null, "recipient", value, fee);
+        tx.senderAddress = from;
+        tx.timeStamp = 1_000_000_000_000L + counter.incrementAndGet();
+        tx.transactionId = tx.calculateHash();
+        return tx;
+    }
+
+    @Test
+    public void testSnapshotIsOrderedByFeeRate() {
+        Mempool mempool = new Mempool(100, Long.MAX_VALUE, Long.MAX_VALUE);
+        mempool.add(transfer("alice", 1.0, 0.01));
+        mempool.add(transfer("bob", 1.0, 0.50));
+        mempool.add(transfer("carol", 1.0, 0.10));
+
+        List<Transaction> snapshot = mempool.snapshot();
+        assertEquals(0.50, snapshot.get(0).fee);
+        assertEquals(0.10, snapshot.get(1).fee);
+        assertEquals(0.01, snapshot.get(2).fee);
+    }
+
+    @Test
+    public void testLowestFeeIsEvictedWhenFull() {
+        Mempool mempool = new Mempool(2, Long.MAX_VALUE, Long.MAX_VALUE);
+        Transaction cheap = transfer("alice", 1.0, 0.01);
+        mempool.add(cheap);
+        mempool.add(transfer("alice", 1.0, 0.20));
+        mempool.add(transfer("bob", 1.0, 0.30));
+
+        assertEquals(2, mempool.size());
+        assertFalse(mempool.contains(cheap.transactionId));
+        assertEquals(1.20, mempool.getPendingSpend("alice"), 1e-9);
+
+        // Cannot displace anything when paying less than the cheapest entry
+        assertThrows(RuntimeException.class, () -> mempool.add(transfer("carol", 1.0, 0.001)));
+    }
+
+    @Test
+    public void testExpiredTransactionsAreDropped() {
+        Mempool mempool = new Mempool(100, Long.MAX_VALUE, 1000);
+        mempool.add(transfer("alice", 1.0, 0.1));
+        mempool.add(transfer("alice", 2.0, 0.1));
+
+        assertEquals(2, mempool.expire(System.currentTimeMillis() + 5000));
+        assertTrue(mempool.isEmpty());
+        assertEquals(0.0, mempool.getPendingSpend("alice"));
+        assertEquals(0, mempool.getTotalBytes());
+    }
+
+    @Test
+    public void testSenderLedgerTracksRemovals() {
+        Mempool mempool = new Mempool(100, Long.MAX_VALUE, Long.MAX_VALUE);
+        Transaction high = transfer("alice", 5.0, 1.0);
+        mempool.add(transfer("alice", 1.0, 0.1));
+        mempool.add(high);
+
+        Mempool.SenderLedger ledger = mempool.getSenderLedger("alice");
+        assertEquals(2, ledger.getCount());
+        assertEquals(1.0, ledger.getHighestFee());
+
+        mempool.remove(high.transactionId);
+        assertEquals(1, ledger.getCount());
+        assertEquals(0.1, ledger.getHighestFee());
+        assertEquals(1.1, mempool.getPendingSpend("alice"), 1e-9);
+    }
+
+    @Test
+    public void testConcurrentAdmissionWhileMining() throws Exception {
+        Mempool mempool = new Mempool(1_000_000, Long.MAX_VALUE, Long.MAX_VALUE);
+        int perThread = 500;
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean producing = new AtomicBoolean(true);
+        Set<String> submitted = ConcurrentHashMap.newKeySet();
+        Set<String> mined = ConcurrentHashMap.newKeySet();
+        AtomicInteger duplicatesMined = new AtomicInteger();
+
+        List<java.util.concurrent.Future<?>> producers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            String sender = "sender-" + (t % 8); // Threads share senders, and therefore stripes
+            producers.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < perThread; i++) {
+                    Transaction tx = transfer(sender, 1.0, 0.001 * (1 + i % 50));
+                    assertTrue(mempool.add(tx));
+                    submitted.add(tx.transactionId);
+                }
+                return null;
+            }));
+        }
+
+        // Simulated block assembly: snapshot, then remove what was "mined"
+        Thread miner = new Thread(() -> {
+            while (producing.get() || !mempool.isEmpty()) {
+                List<Transaction> template = mempool.snapshot();
+                List<Transaction> block = template.subList(0, Math.min(200, template.size()));
+                for (Transaction tx : block) {
+                    if (!mined.add(tx.transactionId)) {
+                        duplicatesMined.incrementAndGet();
+                    }
+                }
+                mempool.removeAll(block);
+            }
+        });
+        miner.start();
+        start.countDown();
+        for (java.util.concurrent.Future<?> f : producers) {
+            f.get(60, TimeUnit.SECONDS);
+        }
+        producing.set(false);
+        miner.join(60_000);
+        pool.shutdown();
+
+        assertEquals(THREADS * perThread, submitted.size());
+        assertEquals(submitted, mined);
+        assertEquals(0, duplicatesMined.get());
+        assertEquals(0, mempool.size());
+        assertEquals(0, mempool.getTotalBytes());
+        for (int s = 0; s < 8; s++) {
+            assertNull(mempool.getSenderLedger("sender-" + s));
+        }
+    }
+
+    @Test
+    public void testConcurrentAdmissionCannotOverspend() throws Exception {
+        Mempool mempool = new Mempool(1_000_000, Long.MAX_VALUE, Long.MAX_VALUE);
+        double balance = 100.0;
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger accepted = new AtomicInteger();
+
+        for (int t = 0; t < THREADS; t++) {
+            pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < 20; i++) {
+                    try {
+                        if (mempool.add(transfer("alice", 1.0, 0), balance)) {
+                            accepted.incrementAndGet();
+                        }
+                    } catch (RuntimeException e) {
+                        // Insufficient funds once the balance is fully pending
+                    }
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(60, TimeUnit.SECONDS));
+
+        assertEquals(100, accepted.get());
+        assertEquals(100.0, mempool.getPendingSpend("alice"), 1e-9);
+    }
+
+    @Test
+    public void testConcurrentEvictionRespectsCap() throws Exception {
+        int cap = 1000;
+        Mempool mempool = new Mempool(cap, Long.MAX_VALUE, Long.MAX_VALUE);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+
+        for (int t = 0; t < THREADS; t++) {
+            String sender = "sender-" + t;
+            pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < 200; i++) {
+                    try {
+                        mempool.add(transfer(sender, 1.0, 0.001 * (1 + (i * 7) % 100)));
+                    } catch (RuntimeException e) {
+                        // Outbid by the pending transactions
+                    }
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(60, TimeUnit.SECONDS));
+
+        assertEquals(cap, mempool.size());
+        assertEquals(cap, mempool.snapshot().size());
+    }
+
+    @Test
+    public void testRelayedTransactionHasRealFeeRate() {
+        Transaction tx = transfer("alice", 1.0, 0.01);
+        Transaction relayed = com.nexis.utils.JsonUtil.getGson().fromJson(
+                com.nexis.utils.JsonUtil.getGson().toJson(tx), Transaction.class);
+
+        assertEquals(tx.getSerializedSize(), relayed.getSerializedSize());
+        assertEquals(tx.getFeeRate(), relayed.getFeeRate(), 1e-12);
+    }
+
+    @Test
+    public void testSizeAndFeeRateFollowFieldChanges() {
+        Transaction tx = transfer("alice", 1.0, 0.01);
+        int size = tx.getSerializedSize();
+
+        tx.value = 1234.5678;
+        assertTrue(tx.getSerializedSize() > size);
+        tx.fee = 0.02;
+        assertEquals(0.02 / tx.getSerializedSize(), tx.getFeeRate(), 1e-12);
+        assertEquals(com.nexis.utils.JsonUtil.getGson().toJson(tx).length(), tx.getSerializedSize());
+    }
+}
@@ -0,0 +1,84 @@
+package com.nexis.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OrphanBlockPoolTest {
+
+    private static final AtomicInteger counter = new AtomicInteger();
+
+    // Empty, unmined block with a unique hash
+    private static Block block(Block parent) {
+        Block block = new Block(parent == null ? 1 : parent.index + 1, parent == null ? "missing" : parent.hash,
+                new ArrayList<>(), 0, Blockchain.BLOCK_REWARD);
+        block.nonce = counter.incrementAndGet();
+        block.hash = block.calculateHash();
+        return block;
+    }
+
+    @Test
+    public void testLongestBranchFromRootInHeightOrder() {
+        OrphanBlockPool pool = new OrphanBlockPool(Long.MAX_VALUE, Long.MAX_VALUE);
+        Block a = block(null);
+        Block b = block(a);
+        Block c = block(b);
+        Block side = block(a);
+
+        // Arrival out of order
+        pool.add(c, 0);
+        pool.add(side, 0);
+        pool.add(b, 0);
+        pool.add(a, 0);
+
+        assertSame(a, pool.getRoot(c));
+        assertSame(a, pool.getRoot(side));
+        assertEquals(List.of(a, b, c), pool.getLongestBranch(a));
+        assertEquals(List.of(side, b), pool.getChildren(a.hash)); // Arrival order
+        assertFalse(pool.add(b, 0));
+    }
+
+    @Test
+    public void testEvictsOldestWhenOverBudget() {
+        Block first = block(null);
+        long size = first.getSerializedSize();
+        OrphanBlockPool pool = new OrphanBlockPool(2 * size, Long.MAX_VALUE);
+
+        Block second = block(null);
+        Block third = block(null);
+        pool.add(first, 0);
+        pool.add(second, 1);
+        pool.add(third, 2);
+
+        assertEquals(2, pool.size());
+        assertFalse(pool.contains(first.hash));
+        assertTrue(pool.contains(third.hash));
+        assertEquals(2 * size, pool.getTotalBytes());
+        assertEquals(1, pool.getEvictedCount());
+    }
+
+    @Test
+    public void testExpiryAndRemovalWithDescendants() {
+        OrphanBlockPool pool = new OrphanBlockPool(Long.MAX_VALUE, 1_000);
+        Block old = block(null);
+        Block a = block(null);
+        Block b = block(a);
+        Block c = block(b);
+        pool.add(old, 0);
+        pool.add(a, 500);
+        pool.add(b, 500);
+        pool.add(c, 500);
+
+        assertEquals(1, pool.expire(1_200));
+        assertFalse(pool.contains(old.hash));
+
+        assertEquals(2, pool.removeWithDescendants(b.hash));
+        assertEquals(1, pool.size());
+        assertEquals(List.of(a), pool.getLongestBranch(a));
+        assertTrue(pool.getChildren(a.hash).isEmpty());
+    }
+}
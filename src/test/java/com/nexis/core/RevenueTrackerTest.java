@@ -0,0 +1,92 @@
+package com.nexis.core;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.nexis.storage.ChainStore;
+import com.nexis.storage.WriteAheadLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RevenueTrackerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final Gson gson = new Gson();
+
+    private WriteAheadLog openWal() {
+        return new WriteAheadLog(tempDir.resolve("wal.log").toFile(), WriteAheadLog.FsyncPolicy.ALWAYS, 0, 0);
+    }
+
+    private RevenueTracker openTracker(WriteAheadLog wal) {
+        return new RevenueTracker(wal, tempDir.resolve("revenue_stats.json").toFile());
+    }
+
+    // What the chain writer does with a save: log the commit, then count its revenue
+    private void logCommit(WriteAheadLog wal, RevenueTracker tracker, List<RevenueTracker.RevenueUpdate> revenue) {
+        JsonObject record = new JsonObject();
+        record.add("revenue", gson.toJsonTree(revenue));
+        long sequence = wal.append(ChainStore.RECORD_COMMIT, record.toString().getBytes(StandardCharsets.UTF_8));
+        wal.commit(sequence);
+        tracker.applyLogged(revenue, sequence);
+    }
+
+    @Test
+    public void testRevenueOfAnUnloggedBlockIsNotCounted() {
+        WriteAheadLog wal = openWal();
+        RevenueTracker tracker = openTracker(wal);
+        tracker.recordBlockRevenue(1000, 0.5, 50.0, 2);
+        logCommit(wal, tracker, tracker.takePending());
+        tracker.recordBlockRevenue(2000, 0.25, 50.0, 1); // Crash before its commit is logged
+        assertEquals(0.5, tracker.totalFeesAllTime, 1e-9);
+
+        // A revenue record from an older log whose commit never made it
+        wal.commit(wal.append(RevenueTracker.RECORD_REVENUE,
+                "{\"timestamp\":3000,\"fees\":9.0,\"reward\":50.0,\"txCount\":3}".getBytes(StandardCharsets.UTF_8)));
+        wal.close();
+
+        WriteAheadLog reopened = openWal();
+        RevenueTracker recovered = openTracker(reopened);
+        assertEquals(0.5, recovered.totalFeesAllTime, 1e-9);
+        assertEquals(50.0, recovered.totalRewardsAllTime, 1e-9);
+        assertEquals(2, recovered.totalTxCountAllTime);
+        reopened.close();
+    }
+
+    @Test
+    public void testCheckpointCountsEveryCommitOnce() {
+        WriteAheadLog wal = openWal();
+        RevenueTracker tracker = openTracker(wal);
+        tracker.recordBlockRevenue(1000, 0.5, 50.0, 2);
+        logCommit(wal, tracker, tracker.takePending());
+
+        // Crash between saving the stats and emptying the log
+        tracker.save();
+        wal.close();
+        wal = openWal();
+        tracker = openTracker(wal);
+        assertEquals(0.5, tracker.totalFeesAllTime, 1e-9);
+
+        // Completed checkpoint, then a commit in the new log
+        tracker.save();
+        wal.reset();
+        tracker.recordBlockRevenue(2000, 0.25, 50.0, 1);
+        logCommit(wal, tracker, tracker.takePending());
+        wal.close();
+
+        WriteAheadLog reopened = openWal();
+        RevenueTracker recovered = openTracker(reopened);
+        assertEquals(0.75, recovered.totalFeesAllTime, 1e-9);
+        assertEquals(100.0, recovered.totalRewardsAllTime, 1e-9);
+        assertEquals(3, recovered.totalTxCountAllTime);
+        assertTrue(new File(tempDir.toFile(), "revenue_stats.json").exists());
+        reopened.close();
+    }
+}
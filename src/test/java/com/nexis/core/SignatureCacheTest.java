@@ -0,0 +1,81 @@
+package com.nexis.core;
+
+import com.nexis.crypto.KeyPairUtil;
+import com.nexis.utils.JsonUtil;
+import org.junit.jupiter.api.Test;
+
+import java.security.KeyPair;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SignatureCacheTest {
+
+    private Transaction signedTransfer(KeyPair from, double value) {
+        Transaction tx = new Transaction(from.getPublic(), "recipient", value, 0.01);
+        tx.generateSignature(from.getPrivate());
+        return tx;
+    }
+
+    @Test
+    public void testCacheHitRequiresSameSignature() {
+        KeyPair alice = KeyPairUtil.generateKeyPair();
+        SignatureCache cache = new SignatureCache(10);
+        Transaction tx = signedTransfer(alice, 5.0);
+
+        assertFalse(cache.contains(tx));
+        cache.add(tx);
+        assertTrue(cache.contains(tx));
+
+        // Same ID with a different signature must be verified again
+        tx.generateSignature(KeyPairUtil.generateKeyPair().getPrivate());
+        assertFalse(cache.contains(tx));
+    }
+
+    @Test
+    public void testOldestEntriesEvicted() {
+        KeyPair alice = KeyPairUtil.generateKeyPair();
+        SignatureCache cache = new SignatureCache(3);
+        Transaction[] txs = new Transaction[5];
+        for (int i = 0; i < txs.length; i++) {
+            txs[i] = signedTransfer(alice, i + 1);
+            cache.add(txs[i]);
+        }
+
+        assertEquals(3, cache.size());
+        assertFalse(cache.contains(txs[0]));
+        assertFalse(cache.contains(txs[1]));
+        assertTrue(cache.contains(txs[4]));
+    }
+
+    @Test
+    public void testMemoizedHashFollowsFieldChanges() {
+        Transaction tx = new Transaction(null, "recipient", 1.0, 0.0);
+        String original = tx.calculateHash();
+        assertEquals(tx.transactionId, original);
+
+        tx.value = 2.0;
+        assertNotEquals(original, tx.calculateHash());
+        tx.value = 1.0;
+        assertEquals(original, tx.calculateHash());
+    }
+
+    @Test
+    public void testCachedSignatureWithChangedValueIsVerifiedAgain() {
+        KeyPair alice = KeyPairUtil.generateKeyPair();
+        SignatureCache cache = new SignatureCache(10);
+        Transaction tx = signedTransfer(alice, 5.0);
+        cache.add(tx);
+
+        // A relayed copy keeping the cached ID and signature but paying more
+        Transaction forged = JsonUtil.getGson().fromJson(JsonUtil.getGson().toJson(tx), Transaction.class);
+        forged.value = 500.0;
+        assertEquals(tx.transactionId, forged.transactionId);
+        assertFalse(cache.contains(forged));
+        assertFalse(forged.verifySignature());
+
+        cache.add(forged); // Never cached under an ID that does not match
+        forged.value = 5.0;
+        forged.transactionId = "not-the-hash";
+        assertFalse(cache.contains(forged));
+    }
+}
@@ -2,6 +2,8 @@ package com.nexis.crypto;
 
 import org.junit.jupiter.api.Test;
 import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.List;
 import static org.junit.jupiter.api.Assertions.*;
 
 public class CryptoTest {
@@ -47,4 +49,40 @@ public class CryptoTest {
         assertNotNull(address);
         assertEquals(64, address.length()); // SHA-256 hash is 64 chars
     }
+
+    @Test
+    public void testBatchVerification() {
+        KeyPair keyPair = KeyPairUtil.generateKeyPair();
+        List<SignatureVerifier.Job> jobs = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            String data = "tx-" + i;
+            byte[] signature = SignatureUtil.applyECDSASig(keyPair.getPrivate(), data);
+            // Every 50th job is tampered
+            byte[] signed = (i % 50 == 0 ? data + "tamper" : data).getBytes();
+            jobs.add(new SignatureVerifier.Job("tx-" + i, keyPair.getPublic(), signed, signature));
+        }
+        jobs.add(new SignatureVerifier.Job("malformed", keyPair.getPublic(), "x".getBytes(), new byte[] { 1, 2, 3 }));
+
+        List<SignatureVerifier.Job> failures = SignatureVerifier.getInstance().verifyBatch(jobs);
+        List<String> failedIds = new ArrayList<>();
+        for (SignatureVerifier.Job job : failures) {
+            failedIds.add(job.id);
+        }
+        assertEquals(List.of("tx-0", "tx-50", "tx-100", "tx-150", "malformed"), failedIds);
+    }
+
+    @Test
+    public void testHashBufferMatchesStringConcatenation() throws Exception {
+        String expected = HashUtil.bytesToHex(java.security.MessageDigest.getInstance("SHA-256")
+                .digest(("42" + null + "-17" + "abc" + Double.toString(0.1) + Long.MAX_VALUE)
+                        .getBytes(java.nio.charset.StandardCharsets.UTF_8)));
+        String actual = HashBuffer.get().putInt(42).putString(null).putLong(-17).putString("abc")
+                .putDouble(0.1).putLong(Long.MAX_VALUE).sha256Hex();
+        assertEquals(expected, actual);
+        assertEquals(HashUtil.applySha256("Nexis \u00e9"), HashUtil.bytesToHex(HashUtil.sha256(
+                "Nexis \u00e9".getBytes(java.nio.charset.StandardCharsets.UTF_8))));
+
+        byte[] raw = HashUtil.hexToBytes(actual.toUpperCase());
+        assertEquals(actual, HashUtil.bytesToHex(raw));
+    }
 }
@@ -0,0 +1,231 @@
+package com.nexis.storage;
+
+import com.nexis.core.Block;
+import com.nexis.core.Transaction;
+import com.nexis.utils.JsonUtil;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BlockStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static Block block(int index, String previousHash, String recipient) {
+        List<Transaction> txs = new ArrayList<>();
+        txs.add(new Transaction(null, recipient, 50.0, 0));
+        return new Block(index, previousHash, txs, 0, 50.0);
+    }
+
+    private static List<Block> chain(int length, String recipient) {
+        List<Block> chain = new ArrayList<>();
+        for (int i = 0; i < length; i++) {
+            chain.add(block(i, i == 0 ? "0" : chain.get(i - 1).hash, recipient + i));
+        }
+        return chain;
+    }
+
+    @Test
+    public void testAppendAcrossSegmentsAndReload() {
+        String dir = tempDir.toString();
+        List<Block> chain = chain(10, "alice");
+
+        // Small segments so the blocks span several files
+        BlockStore store = new BlockStore(dir, 1024);
+        assertEquals(10, store.sync(chain));
+        assertEquals(9, store.getHeight());
+        assertTrue(store.getPosition(9).segment > 0);
+        assertEquals(chain.get(4).hash, store.read(4).hash);
+        assertEquals(0, store.sync(chain)); // Nothing new
+        store.close();
+
+        BlockStore reloaded = new BlockStore(dir, 1024);
+        List<Block> loaded = reloaded.loadAll();
+        assertEquals(10, loaded.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(chain.get(i).hash, loaded.get(i).hash);
+            assertEquals(chain.get(i).transactions.get(0).transactionId,
+                    loaded.get(i).transactions.get(0).transactionId);
+        }
+    }
+
+    @Test
+    public void testSyncRewritesOnlyTheDivergentTail() {
+        String dir = tempDir.toString();
+        List<Block> chain = chain(6, "alice");
+        BlockStore store = new BlockStore(dir, 1024);
+        store.sync(chain);
+        BlockStore.Position kept = store.getPosition(3);
+
+        // Competing branch from height 3
+        List<Block> branch = new ArrayList<>(chain.subList(0, 4));
+        for (int i = 4; i < 8; i++) {
+            branch.add(block(i, branch.get(i - 1).hash, "bob" + i));
+        }
+        assertEquals(4, store.sync(branch));
+        assertEquals(kept.offset, store.getPosition(3).offset);
+        store.close();
+
+        List<Block> loaded = new BlockStore(dir, 1024).loadAll();
+        assertEquals(8, loaded.size());
+        assertEquals(branch.get(7).hash, loaded.get(7).hash);
+        assertEquals(chain.get(3).hash, loaded.get(3).hash);
+    }
+
+    @Test
+    public void testRecoversFromTornWrites() throws Exception {
+        String dir = tempDir.toString();
+        List<Block> chain = chain(4, "alice");
+        BlockStore store = new BlockStore(dir, 1 << 20);
+        store.sync(chain);
+        store.close();
+
+        File index = new File(dir, "index.dat");
+        File segment = store.getSegmentFile(0);
+        try (RandomAccessFile file = new RandomAccessFile(index, "rw")) {
+            // Last index entry lost and the next one half written
+            file.setLength(3L * BlockStore.INDEX_ENTRY_SIZE + 10);
+        }
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            // A record cut short after the last complete one
+            file.seek(file.length());
+            file.writeInt(500);
+            file.writeInt(0);
+            file.write(new byte[20]);
+        }
+
+        BlockStore recovered = new BlockStore(dir, 1 << 20);
+        assertEquals(3, recovered.getHeight()); // Block 3 was written in full and is indexed again
+        assertEquals(chain.get(3).hash, recovered.getHash(3));
+        recovered.append(block(4, chain.get(3).hash, "bob"));
+        recovered.close();
+
+        assertEquals(5, new BlockStore(dir, 1 << 20).loadAll().size());
+    }
+
+    @Test
+    public void testRandomReadsByHeightAndHash() {
+        List<Block> chain = chain(12, "alice");
+        BlockStore store = new BlockStore(tempDir.toString(), 1024);
+        store.sync(chain);
+        int sealed = 2;
+        int active = 11;
+        assertNotEquals(store.getPosition(active).segment, store.getPosition(sealed).segment);
+
+        for (int height : new int[] { sealed, active }) {
+            Block block = chain.get(height);
+            assertEquals(height, store.findHeight(block.hash));
+            assertEquals(JsonUtil.getGson().toJson(block), store.readJson(height));
+            assertEquals(block.hash, store.read(height).hash);
+        }
+        assertEquals(-1, store.findHeight("not-a-hash"));
+
+        // Truncated blocks are no longer found by hash
+        store.truncate(5);
+        assertEquals(-1, store.findHeight(chain.get(active).hash));
+        assertEquals(5, store.findHeight(chain.get(5).hash));
+        assertEquals(chain.get(sealed).hash, store.read(sealed).hash);
+    }
+
+    @Test
+    public void testPayloadOutlivesTruncationOfItsSegment() {
+        List<Block> chain = chain(12, "alice");
+        BlockStore store = new BlockStore(tempDir.toString(), 1024);
+        store.sync(chain);
+        int height = 1;
+        assertEquals(store.getPosition(0).segment, store.getPosition(height).segment);
+        assertNotEquals(store.getPosition(11).segment, store.getPosition(height).segment);
+
+        ByteBuffer payload = store.readPayload(height);
+        store.truncate(height - 1); // Cuts the sealed, mapped segment holding the record
+        assertEquals(JsonUtil.getGson().toJson(chain.get(height)), StandardCharsets.UTF_8.decode(payload).toString());
+    }
+
+    @Test
+    public void testPruneKeepsHeadersAndHashes() {
+        String dir = tempDir.toString();
+        List<Block> chain = chain(30, "alice");
+        BlockStore store = new BlockStore(dir, 1024);
+        store.sync(chain);
+        int firstSegment = store.getPosition(0).segment;
+
+        assertTrue(store.prune(20) > 0);
+        int firstFull = store.getFirstFullHeight();
+        assertTrue(firstFull > 0 && firstFull <= 20, "first full height " + firstFull);
+        assertFalse(store.getSegmentFile(firstSegment).exists());
+        assertThrows(RuntimeException.class, () -> store.read(firstFull - 1));
+        assertEquals(chain.get(25).hash, store.read(25).hash);
+        assertEquals(0, store.prune(20)); // Nothing more to delete
+
+        // Pruned heights keep their hash and header
+        BlockStore.StoredHeader header = store.getHeader(3);
+        assertEquals(chain.get(3).hash, header.hash);
+        assertEquals(chain.get(2).hash, header.previousHash);
+        assertEquals(3, store.findHeight(chain.get(3).hash));
+        assertThrows(RuntimeException.class, () -> store.truncate(firstFull - 1));
+        store.close();
+
+        BlockStore reopened = new BlockStore(dir, 1024);
+        assertEquals(firstFull, reopened.getFirstFullHeight());
+        assertEquals(29, reopened.getHeight());
+        assertEquals(chain.get(3).hash, reopened.getHeader(3).hash);
+
+        // Emptied, the store starts over from its first segment
+        reopened.truncate(-1);
+        assertEquals(0, reopened.getFirstFullHeight());
+        assertEquals(30, reopened.sync(chain));
+        assertEquals(30, reopened.loadAll().size());
+    }
+
+    @Test
+    public void testCompressedSegmentsServeTheSameBlocks() {
+        String dir = tempDir.toString();
+        List<Block> chain = chain(30, "alice");
+        BlockStore store = new BlockStore(dir, 1024);
+        store.sync(chain);
+        long rawSize = store.getSegmentFile(0).length();
+
+        int compressed = 0;
+        while (store.compressOldestSegment(1) >= 0) {
+            compressed++;
+        }
+        int active = store.getPosition(29).segment;
+        assertEquals(active - 1, compressed); // The last sealed segment stays raw
+        assertTrue(store.isCompressed(0));
+        assertFalse(store.isCompressed(active - 1));
+        assertTrue(store.getSegmentFile(0).length() < rawSize);
+        for (int height = 0; height < chain.size(); height++) {
+            assertEquals(JsonUtil.getGson().toJson(chain.get(height)), store.readJson(height));
+        }
+        store.close();
+
+        BlockStore reopened = new BlockStore(dir, 1024);
+        assertTrue(reopened.isCompressed(0));
+        assertEquals(30, reopened.loadAll().size());
+
+        // Rolling back into a compressed segment makes it raw again
+        List<Block> branch = new ArrayList<>(chain.subList(0, 1));
+        for (int i = 1; i < 10; i++) {
+            branch.add(block(i, branch.get(i - 1).hash, "bob" + i));
+        }
+        reopened.sync(branch);
+        assertEquals(0, reopened.getPosition(1).segment); // Appended after block 0
+        assertFalse(reopened.isCompressed(0));
+        reopened.close();
+
+        List<Block> loaded = new BlockStore(dir, 1024).loadAll();
+        assertEquals(10, loaded.size());
+        assertEquals(chain.get(0).hash, loaded.get(0).hash);
+        assertEquals(branch.get(9).hash, loaded.get(9).hash);
+    }
+}
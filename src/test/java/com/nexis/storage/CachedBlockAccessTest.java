@@ -0,0 +1,107 @@
+package com.nexis.storage;
+
+import com.nexis.core.Block;
+import com.nexis.core.Transaction;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CachedBlockAccessTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static Block block(int index, String previousHash, String recipient) {
+        List<Transaction> txs = new ArrayList<>();
+        txs.add(new Transaction(null, recipient, 50.0, 0));
+        return new Block(index, previousHash, txs, 0, 50.0);
+    }
+
+    private static List<Block> chain(int length) {
+        List<Block> chain = new ArrayList<>();
+        for (int i = 0; i < length; i++) {
+            chain.add(block(i, i == 0 ? "0" : chain.get(i - 1).hash, "alice" + i));
+        }
+        return chain;
+    }
+
+    @Test
+    public void testOnlyTheTailIsPinnedAndOlderBlocksAreCached() {
+        List<Block> chain = chain(20);
+        BlockStore store = new BlockStore(tempDir.toString(), 1024);
+        store.sync(chain);
+
+        // Room for about two blocks in the cache
+        long blockSize = chain.get(0).getSerializedSize();
+        CachedBlockAccess blocks = new CachedBlockAccess(store, 4, blockSize * 2);
+        assertEquals(20, blocks.size());
+        assertEquals(4, blocks.getPinnedBlocks());
+        assertEquals(0, blocks.getCachedBlocks());
+        assertEquals(chain.get(19).hash, blocks.getLatest().hash);
+
+        assertEquals(chain.get(17).hash, blocks.get(17).hash); // Pinned
+        assertEquals(1, blocks.getHits());
+        assertEquals(0, blocks.getMisses());
+
+        assertEquals(chain.get(3).hash, blocks.get(3).hash); // Read from disk
+        assertEquals(chain.get(3).hash, blocks.get(3).hash); // Then cached
+        assertEquals(1, blocks.getMisses());
+        assertEquals(2, blocks.getHits());
+
+        blocks.get(4);
+        blocks.get(3); // 3 is now the most recently used
+        blocks.get(5); // Evicts 4
+        assertEquals(2, blocks.getCachedBlocks());
+        assertTrue(blocks.getCachedBytes() <= blockSize * 2);
+        long misses = blocks.getMisses();
+        blocks.get(3);
+        assertEquals(misses, blocks.getMisses());
+        blocks.get(4);
+        assertEquals(misses + 1, blocks.getMisses());
+
+        assertEquals(12, blocks.findHeight(chain.get(12).hash));
+        assertEquals(18, blocks.findHeight(chain.get(18).hash));
+        assertEquals(chain.get(7).hash, blocks.asList().get(7).hash);
+
+        int height = 0;
+        for (Block block : blocks) {
+            assertEquals(chain.get(height++).hash, block.hash);
+        }
+        assertEquals(20, height);
+    }
+
+    @Test
+    public void testUnsavedBlocksStayPinnedAndRollbackReachesStoredBlocks() {
+        List<Block> chain = chain(10);
+        BlockStore store = new BlockStore(tempDir.toString(), 1 << 20);
+        store.sync(chain.subList(0, 6));
+        CachedBlockAccess blocks = new CachedBlockAccess(store, 2, 1 << 20);
+
+        // The new blocks are not saved yet, so they all stay in the tail
+        for (int i = 6; i < 10; i++) {
+            blocks.append(chain.get(i));
+        }
+        assertEquals(4, blocks.getPinnedBlocks()); // Stored blocks 4 and 5 moved out
+        assertEquals(9, blocks.findHeight(chain.get(9).hash));
+        assertEquals(-1, store.findHeight(chain.get(9).hash));
+
+        // Roll back past the pinned tail, then build a different branch
+        for (int i = 9; i >= 3; i--) {
+            assertEquals(chain.get(i).hash, blocks.removeLast().hash);
+        }
+        assertEquals(3, blocks.size());
+        assertEquals(-1, blocks.findHeight(chain.get(4).hash)); // Still in the store, no longer on the chain
+        Block fork = block(3, chain.get(2).hash, "bob");
+        blocks.append(fork);
+        assertEquals(3, blocks.findHeight(fork.hash));
+
+        store.sync(blocks.asList());
+        assertEquals(3, store.getHeight());
+        assertEquals(fork.hash, new CachedBlockAccess(store, 2, 1 << 20).getLatest().hash);
+    }
+}
@@ -0,0 +1,33 @@
+package com.nexis.storage;
+
+import com.nexis.crypto.HashUtil;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HashIndexTest {
+
+    private static String hash(int i) {
+        return HashUtil.applySha256("block" + i);
+    }
+
+    @Test
+    public void testPutGetRemoveAcrossResizes() {
+        HashIndex index = new HashIndex();
+        int n = 10_000;
+        for (int i = 0; i < n; i++) {
+            index.put(hash(i), i);
+        }
+        assertEquals(n, index.size());
+
+        // Removing every third entry must not hide the others in the same probe runs
+        for (int i = 0; i < n; i += 3) {
+            index.remove(hash(i));
+        }
+        for (int i = 0; i < n; i++) {
+            assertEquals(i % 3 == 0 ? -1 : i, index.get(hash(i)));
+        }
+        assertEquals(-1, index.get("zz"));
+        assertEquals(-1, index.get("not-a-hex-hash-at-all"));
+    }
+}
@@ -0,0 +1,80 @@
+package com.nexis.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PersistenceWriterTest {
+
+    @Test
+    public void testBatchesInOrderWithBackpressureAndBarrier() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> written = new CopyOnWriteArrayList<>();
+        PersistenceWriter<Integer> writer = new PersistenceWriter<>("test-writer", 2, batch -> {
+            try {
+                release.await(); // A slow disk
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            written.addAll(batch);
+        });
+
+        // The first item is taken by the writer, two more fill the queue
+        long first = writer.submit(1);
+        while (writer.getQueued() > 0) {
+            Thread.sleep(1);
+        }
+        writer.submit(2);
+        writer.submit(3);
+        assertEquals(0, writer.getBlockedSubmits());
+
+        // The next submit has to wait for room
+        Thread producer = new Thread(() -> writer.submit(4));
+        producer.start();
+        producer.join(200);
+        assertTrue(producer.isAlive());
+
+        Thread waiter = new Thread(() -> writer.awaitDurable(first));
+        waiter.start();
+        waiter.join(100);
+        assertTrue(waiter.isAlive()); // Not written yet
+
+        release.countDown();
+        producer.join(TimeUnit.SECONDS.toMillis(5));
+        writer.flush();
+        waiter.join(TimeUnit.SECONDS.toMillis(5));
+
+        assertFalse(waiter.isAlive());
+        assertEquals(List.of(1, 2, 3, 4), written);
+        assertEquals(1, writer.getBlockedSubmits());
+        assertEquals(4, writer.getItems());
+        assertTrue(writer.getBatches() < 4); // Queued items were written together
+    }
+
+    @Test
+    public void testFailedWriteIsReportedAndStopsTheWriter() {
+        List<Integer> written = new CopyOnWriteArrayList<>();
+        PersistenceWriter<Integer> writer = new PersistenceWriter<>("test-writer", 4, batch -> {
+            if (batch.contains(2)) {
+                throw new RuntimeException("disk full");
+            }
+            written.addAll(batch);
+        });
+
+        long first = writer.submit(1);
+        writer.awaitDurable(first);
+        long second = writer.submit(2);
+
+        RuntimeException error = assertThrows(RuntimeException.class, () -> writer.awaitDurable(second));
+        assertTrue(error.getMessage().contains("disk full"));
+        assertThrows(RuntimeException.class, writer::flush);
+        assertThrows(RuntimeException.class, () -> writer.submit(3));
+        writer.awaitDurable(first); // Written before the failure
+        assertEquals(List.of(1), written);
+    }
+}
@@ -0,0 +1,79 @@
+package com.nexis.storage;
+
+import com.nexis.core.Proposal;
+import com.nexis.core.SmartContract;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StateSnapshotTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static StateSnapshot sample() {
+        StateSnapshot snapshot = new StateSnapshot();
+        snapshot.height = 1500;
+        snapshot.tipHash = "0000a1b2c3d4e5f60718293a4b5c6d7e8f90a1b2c3d4e5f60718293a4b5c6d7e";
+        snapshot.issuedSupply = 75000.0;
+        snapshot.totalFees = 12.5;
+        snapshot.balances.put("NXS_alice", 40.25);
+        snapshot.balances.put("NXS_TREASURY_POOL_V1", 7500.0);
+        snapshot.stakes.put("NXS_alice", 10.0);
+
+        Proposal proposal = new Proposal("p1", "Raise the block size", "NXS_alice", 60_000);
+        proposal.votes.put("NXS_alice", 10.0);
+        proposal.executed = true;
+        snapshot.proposals.put(proposal.id, proposal);
+
+        SmartContract contract = new SmartContract("SC_1", "NXS_alice", null);
+        contract.state = 42;
+        snapshot.contracts.put(contract.address, contract);
+        return snapshot;
+    }
+
+    @Test
+    public void testRoundTripThroughFile() {
+        StateSnapshot original = sample();
+        File file = new File(tempDir.toFile(), "state.snap");
+        StateSnapshot.write(file, original.encode());
+
+        StateSnapshot loaded = StateSnapshot.read(file);
+        assertNotNull(loaded);
+        assertEquals(original.height, loaded.height);
+        assertEquals(original.tipHash, loaded.tipHash);
+        assertEquals(original.issuedSupply, loaded.issuedSupply);
+        assertEquals(original.totalFees, loaded.totalFees);
+        assertEquals(original.balances, loaded.balances);
+        assertEquals(original.stakes, loaded.stakes);
+
+        Proposal proposal = loaded.proposals.get("p1");
+        assertEquals("Raise the block size", proposal.description);
+        assertEquals(original.proposals.get("p1").endTimestamp, proposal.endTimestamp);
+        assertTrue(proposal.executed);
+        assertEquals(10.0, proposal.votes.get("NXS_alice"));
+
+        SmartContract contract = loaded.contracts.get("SC_1");
+        assertEquals("NXS_alice", contract.owner);
+        assertNull(contract.script);
+        assertEquals(42, contract.state);
+    }
+
+    @Test
+    public void testDamagedSnapshotIsIgnored() throws Exception {
+        File file = new File(tempDir.toFile(), "state.snap");
+        assertNull(StateSnapshot.read(file));
+
+        StateSnapshot.write(file, sample().encode());
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.seek(60);
+            out.write(0x7F);
+        }
+        assertNull(StateSnapshot.read(file));
+    }
+}
@@ -0,0 +1,163 @@
+package com.nexis.storage;
+
+import com.nexis.core.Block;
+import com.nexis.core.Transaction;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransactionIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static Block block(int index, String previousHash, String recipient) {
+        List<Transaction> txs = new ArrayList<>();
+        txs.add(new Transaction(null, recipient, 50.0, 0));
+        return new Block(index, previousHash, txs, 0, 50.0);
+    }
+
+    @Test
+    public void testLookupAndReload() {
+        String file = tempDir.resolve("txindex.dat").toString();
+        List<Block> chain = new ArrayList<>();
+        chain.add(block(0, "0", "genesis"));
+        chain.add(block(1, chain.get(0).hash, "alice"));
+
+        TransactionIndex index = new TransactionIndex(file);
+        index.load(chain);
+        String txId = chain.get(1).transactions.get(0).transactionId;
+        assertTrue(index.contains(txId));
+        assertEquals(1, index.find(txId).height);
+        assertFalse(index.contains("not-a-transaction"));
+
+        Block extra = block(2, chain.get(1).hash, "bob");
+        chain.add(extra);
+        index.indexBlock(extra);
+        index.flush(); // As the chain writer does once the block is stored
+
+        TransactionIndex reloaded = new TransactionIndex(file);
+        reloaded.load(chain);
+        assertEquals(3, reloaded.size());
+        assertEquals(0, reloaded.find(extra.transactions.get(0).transactionId).position);
+    }
+
+    @Test
+    public void testUnwindSurvivesReload() {
+        String file = tempDir.resolve("txindex.dat").toString();
+        List<Block> chain = new ArrayList<>();
+        chain.add(block(0, "0", "genesis"));
+        chain.add(block(1, chain.get(0).hash, "alice"));
+
+        TransactionIndex index = new TransactionIndex(file);
+        index.load(chain);
+
+        Block orphaned = chain.remove(1);
+        index.unindexBlock(orphaned);
+        Block replacement = block(1, chain.get(0).hash, "carol");
+        chain.add(replacement);
+        index.indexBlock(replacement);
+        index.flush();
+
+        TransactionIndex reloaded = new TransactionIndex(file);
+        reloaded.load(chain);
+        assertNull(reloaded.find(orphaned.transactions.get(0).transactionId));
+        assertNotNull(reloaded.find(replacement.transactions.get(0).transactionId));
+    }
+
+    @Test
+    public void testLogAheadOfChainIsCutBack() throws Exception {
+        String file = tempDir.resolve("txindex.dat").toString();
+        List<Block> chain = new ArrayList<>();
+        chain.add(block(0, "0", "genesis"));
+        chain.add(block(1, chain.get(0).hash, "alice"));
+        chain.add(block(2, chain.get(1).hash, "bob"));
+
+        TransactionIndex index = new TransactionIndex(file);
+        index.load(chain);
+
+        // The block store came back without its last block
+        Block lost = chain.remove(2);
+        TransactionIndex reloaded = new TransactionIndex(file);
+        reloaded.load(chain);
+        assertNull(reloaded.find(lost.transactions.get(0).transactionId));
+        assertNotNull(reloaded.find(chain.get(1).transactions.get(0).transactionId));
+
+        List<String> lines = Files.readAllLines(Path.of(file));
+        assertEquals("B 0 " + chain.get(0).hash, lines.get(0)); // Kept, not rebuilt
+        assertEquals("U 2", lines.get(lines.size() - 1));
+    }
+
+    @Test
+    public void testCheckpointCutsTheLog() throws Exception {
+        Path file = tempDir.resolve("txindex.dat");
+        List<Block> chain = new ArrayList<>();
+        chain.add(block(0, "0", "genesis"));
+        chain.add(block(1, chain.get(0).hash, "alice"));
+
+        TransactionIndex index = new TransactionIndex(file.toString());
+        index.load(chain);
+        List<String> beforeCheckpoint = Files.readAllLines(file);
+        index.writeCheckpoint(index.checkpoint(1, chain.get(1).hash));
+        Block after = block(2, chain.get(1).hash, "bob");
+        chain.add(after);
+        index.indexBlock(after);
+        index.flush();
+
+        // Only the block after the checkpoint is replayed
+        List<String> log = Files.readAllLines(file);
+        assertEquals("C 1 " + chain.get(1).hash, log.get(0));
+        assertEquals("B 2 " + after.hash, log.get(1));
+        TransactionIndex reloaded = new TransactionIndex(file.toString());
+        reloaded.load(chain);
+        assertEquals(3, reloaded.size());
+        assertEquals(1, reloaded.find(chain.get(1).transactions.get(0).transactionId).height);
+        assertEquals(2, reloaded.find(after.transactions.get(0).transactionId).height);
+
+        // A crash between the checkpoint and the log restart leaves the old log
+        Files.write(file, beforeCheckpoint);
+        reloaded = new TransactionIndex(file.toString());
+        reloaded.load(chain);
+        assertEquals(3, reloaded.size());
+        assertEquals("C 1 " + chain.get(1).hash, Files.readAllLines(file).get(0));
+    }
+
+    @Test
+    public void testRepeatedReorganizationsReload() {
+        String file = tempDir.resolve("txindex.dat").toString();
+        List<Block> chain = new ArrayList<>();
+        chain.add(block(0, "0", "genesis"));
+        TransactionIndex index = new TransactionIndex(file);
+        index.load(chain);
+
+        // The tip is replaced many times; the last replacement re-mines a dropped transaction
+        Block tip = block(1, chain.get(0).hash, "alice");
+        index.indexBlock(tip);
+        for (int i = 0; i < 50; i++) {
+            index.unindexBlock(tip);
+            tip = block(1, chain.get(0).hash, "miner" + i);
+            index.indexBlock(tip);
+        }
+        Transaction remined = tip.transactions.get(0);
+        index.unindexBlock(tip);
+        List<Transaction> txs = new ArrayList<>();
+        txs.add(new Transaction(null, "final", 50.0, 0));
+        txs.add(remined);
+        tip = new Block(1, chain.get(0).hash, txs, 0, 50.0);
+        index.indexBlock(tip);
+        index.flush();
+        chain.add(tip);
+
+        TransactionIndex reloaded = new TransactionIndex(file);
+        reloaded.load(chain);
+        assertEquals(3, reloaded.size());
+        assertEquals(1, reloaded.find(remined.transactionId).position);
+        assertEquals(1, reloaded.find(remined.transactionId).height);
+    }
+}
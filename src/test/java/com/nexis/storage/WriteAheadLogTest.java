@@ -0,0 +1,107 @@
+package com.nexis.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WriteAheadLogTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testCommittedRecordsAreReadBackAndTornTailDropped() throws Exception {
+        File file = new File(tempDir.toFile(), "wal.log");
+        WriteAheadLog wal = new WriteAheadLog(file, WriteAheadLog.FsyncPolicy.ALWAYS, 0, 0);
+        wal.append((byte) 1, bytes("first"));
+        long second = wal.append((byte) 2, bytes("second"));
+        wal.commit(second);
+        assertEquals(second, wal.getDurableSequence());
+        wal.append((byte) 1, bytes("never committed"));
+        long size = file.length();
+
+        // A crash half way through the next batch
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.seek(size);
+            out.writeInt(100);
+            out.writeInt(0);
+            out.write(new byte[30]);
+        }
+
+        WriteAheadLog reopened = new WriteAheadLog(file, WriteAheadLog.FsyncPolicy.ALWAYS, 0, 0);
+        List<WriteAheadLog.Record> records = reopened.getRecovered();
+        assertEquals(2, records.size());
+        assertEquals(1, records.get(0).sequence);
+        assertEquals(2, records.get(1).type);
+        assertEquals("second", new String(records.get(1).payload, StandardCharsets.UTF_8));
+        assertEquals(size, file.length());
+        assertEquals(3, reopened.append((byte) 1, bytes("third")));
+    }
+
+    @Test
+    public void testResetKeepsOnlyLaterRecordsAndTheSequence() {
+        File file = new File(tempDir.toFile(), "wal.log");
+        WriteAheadLog wal = new WriteAheadLog(file, WriteAheadLog.FsyncPolicy.NEVER, 0, 0);
+        for (int i = 0; i < 5; i++) {
+            wal.commit(wal.append((byte) 1, bytes("record " + i)));
+        }
+        wal.reset();
+        assertEquals(WriteAheadLog.HEADER_SIZE, file.length());
+        wal.commit(wal.append((byte) 1, bytes("after checkpoint")));
+        wal.close();
+
+        List<WriteAheadLog.Record> records = new WriteAheadLog(file, WriteAheadLog.FsyncPolicy.NEVER, 0, 0)
+                .getRecovered();
+        assertEquals(1, records.size());
+        assertEquals(6, records.get(0).sequence);
+    }
+
+    @Test
+    public void testConcurrentCommitsShareFsyncs() throws Exception {
+        File file = new File(tempDir.toFile(), "wal.log");
+        WriteAheadLog wal = new WriteAheadLog(file, WriteAheadLog.FsyncPolicy.ALWAYS, 5, 0);
+        int threads = 8;
+        int perThread = 20;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    long sequence = wal.append((byte) 1, bytes("commit"));
+                    wal.commit(sequence);
+                    assertTrue(wal.getDurableSequence() >= sequence);
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertEquals(threads * perThread, wal.getCommits());
+        assertTrue(wal.getSyncs() < wal.getCommits(), "syncs: " + wal.getSyncs());
+        wal.close();
+        assertEquals(threads * perThread,
+                new WriteAheadLog(file, WriteAheadLog.FsyncPolicy.ALWAYS, 0, 0).getRecovered().size());
+    }
+}